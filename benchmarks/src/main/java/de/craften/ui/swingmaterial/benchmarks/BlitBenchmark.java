@@ -0,0 +1,85 @@
+package de.craften.ui.swingmaterial.benchmarks;
+
+import de.craften.ui.swingmaterial.MaterialShadow;
+import org.openjdk.jmh.annotations.*;
+
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.awt.image.VolatileImage;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares painting a level 2 shadow of a 300x200 component stored as a
+ * {@code TYPE_INT_ARGB} image, like shadows were before, with the {@code
+ * TYPE_INT_ARGB_PRE} image that {@link MaterialShadow} renders now. Both are
+ * painted onto an opaque {@code TYPE_INT_RGB} image, a translucent {@code
+ * TYPE_INT_ARGB_PRE} image and a {@link VolatileImage}.
+ * <p>
+ * Buffered targets are always painted by the software loops. A volatile
+ * target needs a display and is painted by the pipeline of the screen, so
+ * the default run fails for it when headless; run with {@code -p
+ * target=INT_RGB,INT_ARGB_PRE} there. To measure the XRender pipeline on
+ * Linux, run {@code java -jar target/benchmarks.jar BlitBenchmark
+ * -jvmArgsAppend -Dsun.java2d.xrender=true}.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class BlitBenchmark {
+    @Param({"INT_ARGB", "INT_ARGB_PRE"})
+    public String source;
+
+    @Param({"INT_RGB", "INT_ARGB_PRE", "volatile"})
+    public String target;
+
+    private BufferedImage shadow;
+    private Image canvas;
+    private Graphics2D g;
+
+    @Setup
+    public void setUp() {
+        BufferedImage rendered = MaterialShadow.renderShadow(300, 200, 2, 3, MaterialShadow.Renderer.BLUR);
+        shadow = new BufferedImage(rendered.getWidth(), rendered.getHeight(), source.equals("INT_ARGB")
+                ? BufferedImage.TYPE_INT_ARGB : BufferedImage.TYPE_INT_ARGB_PRE);
+        Graphics2D copy = shadow.createGraphics();
+        copy.setComposite(AlphaComposite.Src);
+        copy.drawImage(rendered, 0, 0, null);
+        copy.dispose();
+
+        int width = shadow.getWidth();
+        int height = shadow.getHeight();
+        if (target.equals("volatile")) {
+            if (GraphicsEnvironment.isHeadless()) {
+                throw new IllegalStateException("A VolatileImage needs a display");
+            }
+            canvas = GraphicsEnvironment.getLocalGraphicsEnvironment().getDefaultScreenDevice()
+                    .getDefaultConfiguration().createCompatibleVolatileImage(width, height, Transparency.OPAQUE);
+        } else {
+            canvas = new BufferedImage(width, height, target.equals("INT_RGB")
+                    ? BufferedImage.TYPE_INT_RGB : BufferedImage.TYPE_INT_ARGB_PRE);
+        }
+        g = (Graphics2D) canvas.getGraphics();
+    }
+
+    @TearDown
+    public void tearDown() {
+        g.dispose();
+        canvas.flush();
+    }
+
+    /**
+     * Paints the shadow once. Accelerated pipelines queue their operations,
+     * so a volatile target is synchronized with the screen afterwards.
+     */
+    @Benchmark
+    public Image blit() {
+        g.drawImage(shadow, 0, 0, null);
+        if (canvas instanceof VolatileImage) {
+            Toolkit.getDefaultToolkit().sync();
+        }
+        return canvas;
+    }
+}
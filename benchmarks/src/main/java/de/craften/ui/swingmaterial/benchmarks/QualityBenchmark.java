@@ -0,0 +1,51 @@
+package de.craften.ui.swingmaterial.benchmarks;
+
+import de.craften.ui.swingmaterial.MaterialShadow;
+import org.openjdk.jmh.annotations.*;
+
+import java.awt.image.BufferedImage;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the cost of rendering a blurred shadow with each {@link
+ * MaterialShadow.Quality}, at low, medium and high elevation levels, which
+ * blur with increasing radii. The box blur qualities barely depend on the
+ * radius, while the true Gaussian of {@code PRECISE} grows with it. How far
+ * each quality is from a true Gaussian is checked by {@code QualityTest}.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class QualityBenchmark {
+    @Param({"400x300", "800x600"})
+    public String size;
+
+    @Param({"1", "3", "5"})
+    public double level;
+
+    @Param({"FAST", "STANDARD", "PRECISE"})
+    public MaterialShadow.Quality quality;
+
+    private int width;
+    private int height;
+
+    @Setup
+    public void setUp() {
+        width = Integer.parseInt(size.substring(0, size.indexOf('x')));
+        height = Integer.parseInt(size.substring(size.indexOf('x') + 1));
+        MaterialShadow.setDefaultQuality(quality);
+    }
+
+    @TearDown
+    public void tearDown() {
+        MaterialShadow.setDefaultQuality(MaterialShadow.Quality.STANDARD);
+    }
+
+    @Benchmark
+    public BufferedImage render() {
+        return MaterialShadow.renderShadow(width, height, level, 3, MaterialShadow.Renderer.BLUR);
+    }
+}
@@ -0,0 +1,55 @@
+package de.craften.ui.swingmaterial.benchmarks;
+
+import de.craften.ui.swingmaterial.util.FastGaussianBlur;
+import org.openjdk.jmh.annotations.*;
+
+import java.awt.*;
+import java.awt.geom.RoundRectangle2D;
+import java.awt.image.BufferedImage;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares blurring the shadow of a window in a {@code TYPE_INT_ARGB} image,
+ * whose pixels {@link FastGaussianBlur} copies as they are stored, with the
+ * {@code getRGB}/{@code setRGB} round trip that it falls back to for other
+ * images, here a {@code TYPE_4BYTE_ABGR} image.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class RasterAccessBenchmark {
+    @Param({"800x600", "1280x800", "1920x1080"})
+    public String size;
+
+    @Param({"packed", "roundTrip"})
+    public String access;
+
+    private BufferedImage image;
+
+    @Setup
+    public void setUp() {
+        int width = Integer.parseInt(size.substring(0, size.indexOf('x')));
+        int height = Integer.parseInt(size.substring(size.indexOf('x') + 1));
+        image = new BufferedImage(width, height, access.equals("packed")
+                ? BufferedImage.TYPE_INT_ARGB : BufferedImage.TYPE_4BYTE_ABGR);
+        Graphics2D g = image.createGraphics();
+        g.setColor(new Color(0, 0, 0, 77));
+        g.fill(new RoundRectangle2D.Float(20, 29, width - 40, height - 40, 6, 6));
+        g.dispose();
+    }
+
+    @Benchmark
+    public BufferedImage blurAlpha() {
+        FastGaussianBlur.blurAlpha(image, 38, 0);
+        return image;
+    }
+
+    @Benchmark
+    public BufferedImage blur() {
+        FastGaussianBlur.blur(image, 38);
+        return image;
+    }
+}
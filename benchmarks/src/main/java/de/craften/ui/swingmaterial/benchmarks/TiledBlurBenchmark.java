@@ -0,0 +1,160 @@
+package de.craften.ui.swingmaterial.benchmarks;
+
+import de.craften.ui.swingmaterial.util.FastGaussianBlur;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the tiled vertical pass of {@link FastGaussianBlur} with a pass
+ * that walks down every column with a stride of the image width, at widths of
+ * 256, 1024 and 4096 pixels. Every image has the same number of pixels, so a
+ * pass that scales with the pixel count takes the same time at every width.
+ * The strided blur is otherwise the same fixed-point blur, and gives the same
+ * result.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class TiledBlurBenchmark {
+    private static final int PIXELS = 1024 * 1024;
+    private static final double RADIUS = 38;
+
+    @Param({"256", "1024", "4096"})
+    public int width;
+
+    private int height;
+    private int[] source;
+    private int[] alpha;
+    private int[] temp;
+
+    @Setup
+    public void setUp() {
+        height = PIXELS / width;
+        source = new int[PIXELS];
+        for (int y = height / 8; y < height - height / 8; y++) {
+            Arrays.fill(source, y * width + width / 8, y * width + width - width / 8, 77);
+        }
+        alpha = new int[PIXELS];
+        temp = new int[PIXELS];
+
+        int[] tiled = source.clone();
+        FastGaussianBlur.blurAlpha(tiled, width, height, RADIUS, 1);
+        int[] strided = source.clone();
+        StridedBlur.blur(strided, temp, width, height, RADIUS);
+        if (!Arrays.equals(tiled, strided)) {
+            throw new IllegalStateException("The strided blur differs from the tiled blur");
+        }
+    }
+
+    @Benchmark
+    public int[] tiled() {
+        System.arraycopy(source, 0, alpha, 0, PIXELS);
+        FastGaussianBlur.blurAlpha(alpha, width, height, RADIUS, 1);
+        return alpha;
+    }
+
+    @Benchmark
+    public int[] strided() {
+        System.arraycopy(source, 0, alpha, 0, PIXELS);
+        StridedBlur.blur(alpha, temp, width, height, RADIUS);
+        return alpha;
+    }
+
+    /**
+     * The three box blur passes of {@link FastGaussianBlur} before the
+     * vertical pass was tiled. Boxes must be shorter than the image in both
+     * directions.
+     */
+    private static class StridedBlur {
+        private static final int PRECISION = 22;
+
+        static void blur(int[] scl, int[] tcl, int w, int h, double sigma) {
+            int n = 3;
+            double wIdeal = Math.sqrt((12 * sigma * sigma / n) + 1);
+            int wl = (int) Math.floor(wIdeal);
+            if (wl % 2 == 0) {
+                wl--;
+            }
+            int wu = wl + 2;
+            int m = (int) Math.round((12 * sigma * sigma - n * wl * wl - 4 * n * wl - 3 * n) / (-4 * wl - 4));
+            for (int i = 0; i < n; i++) {
+                int r = ((i < m ? wl : wu) - 1) / 2;
+                blurRows(scl, tcl, w, h, r);
+                blurColumns(tcl, scl, w, h, r);
+            }
+        }
+
+        private static void blurRows(int[] scl, int[] tcl, int w, int h, int r) {
+            final int iarr = reciprocal(r);
+            final int half = 1 << (PRECISION - 1);
+            for (int i = 0; i < h; i++) {
+                int ti = i * w;
+                int li = ti;
+                int ri = ti + r;
+                int fv = scl[ti];
+                int lv = scl[ti + w - 1];
+                int val = (r + 1) * fv;
+                for (int j = 0; j < r; j++) {
+                    val += scl[ti + j];
+                }
+                for (int j = 0; j <= r; j++) {
+                    val += scl[ri++] - fv;
+                    tcl[ti++] = (val * iarr + half) >>> PRECISION;
+                }
+                for (int j = r + 1; j < w - r; j++) {
+                    val += scl[ri++] - scl[li++];
+                    tcl[ti++] = (val * iarr + half) >>> PRECISION;
+                }
+                for (int j = w - r; j < w; j++) {
+                    val += lv - scl[li++];
+                    tcl[ti++] = (val * iarr + half) >>> PRECISION;
+                }
+            }
+        }
+
+        private static void blurColumns(int[] scl, int[] tcl, int w, int h, int r) {
+            final int iarr = reciprocal(r);
+            final int half = 1 << (PRECISION - 1);
+            for (int i = 0; i < w; i++) {
+                int ti = i;
+                int li = ti;
+                int ri = ti + r * w;
+                int fv = scl[ti];
+                int lv = scl[ti + w * (h - 1)];
+                int val = (r + 1) * fv;
+                for (int j = 0; j < r; j++) {
+                    val += scl[ti + j * w];
+                }
+                for (int j = 0; j <= r; j++) {
+                    val += scl[ri] - fv;
+                    tcl[ti] = (val * iarr + half) >>> PRECISION;
+                    ri += w;
+                    ti += w;
+                }
+                for (int j = r + 1; j < h - r; j++) {
+                    val += scl[ri] - scl[li];
+                    tcl[ti] = (val * iarr + half) >>> PRECISION;
+                    li += w;
+                    ri += w;
+                    ti += w;
+                }
+                for (int j = h - r; j < h; j++) {
+                    val += lv - scl[li];
+                    tcl[ti] = (val * iarr + half) >>> PRECISION;
+                    li += w;
+                    ti += w;
+                }
+            }
+        }
+
+        private static int reciprocal(int r) {
+            int size = r + r + 1;
+            return ((1 << PRECISION) + size / 2) / size;
+        }
+    }
+}
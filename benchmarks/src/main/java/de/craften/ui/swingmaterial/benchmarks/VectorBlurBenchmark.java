@@ -0,0 +1,62 @@
+package de.craften.ui.swingmaterial.benchmarks;
+
+import de.craften.ui.swingmaterial.util.FastGaussianBlur;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the vertical pass of {@link FastGaussianBlur} using the Vector API
+ * with the scalar pass, by blurring the alpha of shadows from the size of a
+ * button to the size of a window. This needs Java 17 or later; the forked
+ * JVMs add the {@code jdk.incubator.vector} module.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = {"--add-modules", "jdk.incubator.vector"})
+@State(Scope.Thread)
+public class VectorBlurBenchmark {
+    @Param({"120x80", "340x220", "680x440", "1960x1110"})
+    public String size;
+
+    @Param({"3", "12", "38"})
+    public double radius;
+
+    @Param({"true", "false"})
+    public boolean vector;
+
+    private int width;
+    private int height;
+    private int[] source;
+    private int[] alpha;
+
+    @Setup
+    public void setUp() {
+        if (vector && !FastGaussianBlur.isVectorAvailable()) {
+            throw new IllegalStateException("The Vector API is not available");
+        }
+        width = Integer.parseInt(size.substring(0, size.indexOf('x')));
+        height = Integer.parseInt(size.substring(size.indexOf('x') + 1));
+        source = new int[width * height];
+        for (int y = height / 8; y < height - height / 8; y++) {
+            Arrays.fill(source, y * width + width / 8, y * width + width - width / 8, 77);
+        }
+        alpha = new int[source.length];
+        FastGaussianBlur.setVectorEnabled(vector);
+    }
+
+    @TearDown
+    public void tearDown() {
+        FastGaussianBlur.setVectorEnabled(true);
+    }
+
+    @Benchmark
+    public int[] blurAlpha() {
+        System.arraycopy(source, 0, alpha, 0, alpha.length);
+        FastGaussianBlur.blurAlpha(alpha, width, height, radius, 1);
+        return alpha;
+    }
+}
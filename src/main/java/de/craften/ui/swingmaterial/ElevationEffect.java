@@ -30,7 +30,7 @@ public class ElevationEffect {
 
         this.level = SafePropertySetter.animatableProperty(target, (double) level);
         this.targetLevel = level;
-        shadow = new MaterialShadow();
+        shadow = new MaterialShadow(component);
     }
 
     /**
@@ -87,6 +87,46 @@ public class ElevationEffect {
     public void setBorderRadius(int borderRadius) {
         this.borderRadius = borderRadius;
     }
+
+    /**
+     * Gets the color of the shadow cast by the component.
+     * @return the color of the shadow
+     */
+    public Color getShadowColor() {
+        return shadow.getColor();
+    }
+
+    /**
+     * Sets the color of the shadow cast by the component. Shadows are black
+     * by default.
+     * @param color the new color of the shadow
+     * @see MaterialShadow#setColor(Color)
+     */
+    public void setShadowColor(Color color) {
+        shadow.setColor(color);
+        target.repaint();
+    }
+
+    /**
+     * Gets the quality of the blur of the shadow cast by the component.
+     * @return the quality of the shadow, or {@code null} if it has the
+     *         default quality
+     * @see MaterialShadow#getDefaultQuality()
+     */
+    public MaterialShadow.Quality getShadowQuality() {
+        return shadow.getQuality();
+    }
+
+    /**
+     * Sets the quality of the blur of the shadow cast by the component.
+     * @param quality the new quality of the shadow, or {@code null} to use
+     *                the default quality
+     * @see MaterialShadow#setQuality(MaterialShadow.Quality)
+     */
+    public void setShadowQuality(MaterialShadow.Quality quality) {
+        shadow.setQuality(quality);
+        target.repaint();
+    }
     
     /**
      * Paints this effect.
@@ -96,7 +136,7 @@ public class ElevationEffect {
         Graphics2D g2 = (Graphics2D) g;
         g2.setBackground(target.getParent().getBackground());
         g2.setComposite(AlphaComposite.getInstance(AlphaComposite.SRC_OVER, 1.0f));
-        g.drawImage(shadow.render(target.getWidth(), target.getHeight(), borderRadius, level.getValue(), MaterialShadow.Type.SQUARE), 0, 0, null);
+        shadow.paint(g, target.getWidth(), target.getHeight(), borderRadius, level.getValue(), MaterialShadow.Type.SQUARE);
     }
 
     /**
@@ -147,7 +187,7 @@ public class ElevationEffect {
 
         @Override
         public void paint(Graphics g) {
-            g.drawImage(shadow.render(target.getWidth(), target.getHeight(), borderRadius, level.getValue(), MaterialShadow.Type.CIRCULAR), 0, 0, null);
+            shadow.paint(g, target.getWidth(), target.getHeight(), borderRadius, level.getValue(), MaterialShadow.Type.CIRCULAR);
         }
     }
 }
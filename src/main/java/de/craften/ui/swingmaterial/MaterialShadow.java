@@ -1,12 +1,30 @@
 package de.craften.ui.swingmaterial;
 
 import de.craften.ui.swingmaterial.util.FastGaussianBlur;
+import de.craften.ui.swingmaterial.util.Gaussian;
+import de.craften.ui.swingmaterial.util.NinePatch;
 import org.jdesktop.core.animation.timing.KeyFrames;
 
+import javax.swing.event.ChangeListener;
 import java.awt.*;
+import java.awt.color.ColorSpace;
+import java.awt.geom.AffineTransform;
 import java.awt.geom.Ellipse2D;
+import java.awt.geom.Rectangle2D;
 import java.awt.geom.RoundRectangle2D;
 import java.awt.image.BufferedImage;
+import java.awt.image.ComponentColorModel;
+import java.awt.image.DataBuffer;
+import java.awt.image.IndexColorModel;
+import java.io.File;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.WeakHashMap;
+import java.util.concurrent.Future;
 
 /**
  * A renderer for Material shadows. Shadows are a sign of elevation, and help
@@ -76,6 +94,551 @@ public class MaterialShadow {
             .addFrame(10f, 4 / 5.0)
             .addFrame(15f, 5 / 5.0)
             .build();
+
+    /**
+     * The color model of shadows stored as alpha masks: black, with the alpha
+     * value as the index.
+     */
+    private static final IndexColorModel ALPHA_MASK = createAlphaMask(Color.BLACK);
+    /**
+     * A gray color model for the raster of an alpha mask, so that its alpha
+     * values can be drawn as gray levels.
+     */
+    private static final ComponentColorModel GRAY = new ComponentColorModel(ColorSpace.getInstance(ColorSpace.CS_GRAY),
+            false, false, Transparency.OPAQUE, DataBuffer.TYPE_BYTE);
+    /**
+     * The number of shadows handed to an instance that it keeps, which covers
+     * both levels of a crossfade.
+     */
+    private static final int MAX_DELIVERED = 4;
+
+    private static volatile Renderer renderer = Renderer.BLUR;
+
+    /**
+     * Gets the renderer used for shadows by default.
+     *
+     * @return the default renderer
+     */
+    public static Renderer getRenderer() {
+        return renderer;
+    }
+
+    /**
+     * Sets the renderer used for shadows by default. The default renderer is
+     * {@link Renderer#BLUR}.
+     *
+     * @param renderer the new default renderer
+     * @see #renderShadow(int, int, double, int, Renderer)
+     */
+    public static void setRenderer(Renderer renderer) {
+        if (renderer == null) {
+            throw new IllegalArgumentException("Renderer must not be null");
+        }
+        MaterialShadow.renderer = renderer;
+    }
+
+    private static volatile Quality defaultQuality = Quality.STANDARD;
+
+    /**
+     * Gets the quality of the blur of shadows that don't have a quality of
+     * their own.
+     *
+     * @return the default quality
+     */
+    public static Quality getDefaultQuality() {
+        return defaultQuality;
+    }
+
+    /**
+     * Sets the quality of the blur of shadows that don't have a quality of
+     * their own. The default quality is {@link Quality#STANDARD}. Shadows of
+     * different qualities are cached separately.
+     *
+     * @param quality the new default quality
+     * @see #setQuality(Quality)
+     */
+    public static void setDefaultQuality(Quality quality) {
+        if (quality == null) {
+            throw new IllegalArgumentException("Quality must not be null");
+        }
+        defaultQuality = quality;
+    }
+
+    private static volatile boolean ninePatchEnabled = true;
+
+    /**
+     * Checks if square shadows are rendered as nine-patches. If enabled, the
+     * corners and edges of a shadow are only rendered once for each elevation
+     * level and border radius, and then stretched to the size of any component
+     * that is large enough. This makes the cost of a shadow independent of the
+     * size of the component casting it.
+     *
+     * @return {@code true} if nine-patch rendering is enabled
+     */
+    public static boolean isNinePatchEnabled() {
+        return ninePatchEnabled;
+    }
+
+    /**
+     * Enables or disables nine-patch rendering of square shadows. It is
+     * enabled by default.
+     *
+     * @param enabled {@code true} to enable nine-patch rendering
+     * @see #isNinePatchEnabled()
+     */
+    public static void setNinePatchEnabled(boolean enabled) {
+        ninePatchEnabled = enabled;
+    }
+
+    private static volatile double levelQuantization = 0.25;
+
+    /**
+     * Gets the step between the elevation levels shadows are rendered at
+     * while painting.
+     *
+     * @return the quantization step, or {@code 0} if shadows are rendered at
+     *         any level
+     */
+    public static double getLevelQuantization() {
+        return levelQuantization;
+    }
+
+    /**
+     * Sets the step between the elevation levels shadows are rendered at
+     * while painting. Animated elevation changes pass through a different
+     * level on nearly every frame, and each of them would need new blurs.
+     * With quantization, only shadows at multiples of the step are rendered
+     * (and cached), and levels in between are painted as a linear blend of
+     * the two nearest ones, which changes continuously while animating. The
+     * default step is {@code 0.25}, so the integer levels of components are
+     * always rendered exactly.
+     * <p/>
+     * Compared to the shadow rendered at a level in between, the alpha of a
+     * pixel of the blend differs by up to {@code 7/255} with the default step,
+     * except between levels {@code 0.5} and {@code 0.75}, where the shadow
+     * changes the most and it differs by up to {@code 15/255}.
+     *
+     * @param step the quantization step, or {@code 0} to render shadows at
+     *             any level
+     * @see #paint(Graphics, int, int, int, double, Type)
+     */
+    public static void setLevelQuantization(double step) {
+        if (step < 0 || step > 5) {
+            throw new IllegalArgumentException("Quantization step must be between 0 and 5 (inclusive)");
+        }
+        levelQuantization = step;
+    }
+
+    private static volatile boolean asyncRenderingEnabled = false;
+
+    /**
+     * Checks if shadows are rendered in the background while painting.
+     *
+     * @return {@code true} if asynchronous rendering is enabled
+     */
+    public static boolean isAsyncRenderingEnabled() {
+        return asyncRenderingEnabled;
+    }
+
+    /**
+     * Enables or disables rendering shadows in the background while painting.
+     * If enabled, painting a shadow that is not cached yet doesn't block the
+     * event dispatch thread. Instead, the shadow is rendered on a background
+     * thread, the latest shadow painted by the same {@code MaterialShadow} is
+     * painted stretched in the meantime, and the component casting the shadow
+     * is repainted once it is ready. This only applies to shadows created with
+     * an owner component. It is disabled by default.
+     *
+     * @param enabled {@code true} to enable asynchronous rendering
+     * @see #MaterialShadow(Component)
+     */
+    public static void setAsyncRenderingEnabled(boolean enabled) {
+        asyncRenderingEnabled = enabled;
+    }
+
+    private static volatile boolean compactStorageEnabled = false;
+
+    /**
+     * Checks if new shadows are stored as 8-bit alpha masks.
+     *
+     * @return {@code true} if compact storage is enabled
+     */
+    public static boolean isCompactStorageEnabled() {
+        return compactStorageEnabled;
+    }
+
+    /**
+     * Enables or disables storing new shadows as 8-bit alpha masks instead of
+     * 32-bit ARGB images. Only the alpha of a shadow varies, so alpha masks
+     * need a quarter of the memory in the {@link ShadowCache}, and shadows of
+     * any {@link #setColor(Color) color} share the same mask. Shadows that
+     * are already cached keep their format until they are evicted. It is
+     * disabled by default.
+     *
+     * @param enabled {@code true} to enable compact storage
+     */
+    public static void setCompactStorageEnabled(boolean enabled) {
+        compactStorageEnabled = enabled;
+    }
+
+    private static volatile boolean hollowEnabled = false;
+
+    /**
+     * Checks if shadows are painted without the area beneath the component
+     * casting them.
+     *
+     * @return {@code true} if hollow shadows are enabled
+     */
+    public static boolean isHollowEnabled() {
+        return hollowEnabled;
+    }
+
+    /**
+     * Enables or disables painting shadows without the area beneath the
+     * component casting them. Most of a shadow is covered by its component,
+     * so if enabled, only the ring around the component is painted: the edges
+     * and the corners, and the rounded corners of the component itself. Large
+     * square shadows are then always kept as their nine-patch, which only
+     * stores that ring, even if {@link #setNinePatchEnabled(boolean) nine-patch
+     * rendering} is disabled. This must only be enabled if all components
+     * casting shadows paint an opaque background over their whole outline. It
+     * is disabled by default.
+     *
+     * @param enabled {@code true} to enable hollow shadows
+     */
+    public static void setHollowEnabled(boolean enabled) {
+        hollowEnabled = enabled;
+    }
+
+    private static volatile ShadowAtlas atlas;
+
+    /**
+     * Gets the atlas shadows are read from before rendering them.
+     *
+     * @return the atlas, or {@code null} if there is none
+     */
+    public static ShadowAtlas getAtlas() {
+        return atlas;
+    }
+
+    /**
+     * Sets an atlas of pre-rendered shadows. Shadows that are not cached yet
+     * are read from the atlas if it contains them, instead of being rendered.
+     * There is no atlas by default.
+     *
+     * @param atlas the atlas, or {@code null} to render all shadows
+     * @see ShadowAtlas#load(File)
+     */
+    public static void setAtlas(ShadowAtlas atlas) {
+        MaterialShadow.atlas = atlas;
+    }
+
+    private static volatile double frameBudget = Double.POSITIVE_INFINITY;
+
+    /**
+     * Gets the time that may be spent rendering shadows while painting a
+     * frame.
+     *
+     * @return the frame budget, in milliseconds, or {@link
+     *         Double#POSITIVE_INFINITY} if it is unlimited
+     */
+    public static double getFrameBudget() {
+        return frameBudget;
+    }
+
+    /**
+     * Sets the time that may be spent rendering shadows while painting a
+     * frame. When a view with many elevated components appears, all of their
+     * shadows would otherwise be rendered in a single paint and stall it.
+     * Once the budget of a frame is used up, shadows that are not cached yet
+     * are deferred: they are painted without a shadow, or with the latest
+     * shadow painted by the same {@code MaterialShadow} stretched, and
+     * rendered in later frames, a budget at a time, shadows of components
+     * that are showing first. The components casting them are repainted once
+     * they are ready. This only applies to shadows created with an owner
+     * component, and not to those rendered in the background. By default,
+     * the budget is unlimited.
+     *
+     * @param milliseconds the frame budget, in milliseconds, or {@link
+     *                     Double#POSITIVE_INFINITY} for an unlimited budget
+     * @see #getDeferredShadowCount()
+     * @see #setAsyncRenderingEnabled(boolean)
+     */
+    public static void setFrameBudget(double milliseconds) {
+        if (!(milliseconds >= 0)) {
+            throw new IllegalArgumentException("Frame budget must not be negative");
+        }
+        frameBudget = milliseconds;
+        ShadowScheduler.setBudget(milliseconds == Double.POSITIVE_INFINITY
+                ? Long.MAX_VALUE : (long) (milliseconds * 1000000));
+    }
+
+    /**
+     * Gets the number of shadows that were deferred because the frame budget
+     * was used up, and are waiting to be rendered.
+     *
+     * @return the number of deferred shadows
+     * @see #setFrameBudget(double)
+     */
+    public static int getDeferredShadowCount() {
+        return ShadowScheduler.getDeferredCount();
+    }
+
+    /**
+     * Adds a listener that is notified whenever the number of deferred shadows
+     * changes.
+     *
+     * @param listener the listener to add
+     * @see #getDeferredShadowCount()
+     */
+    public static void addDeferredShadowListener(ChangeListener listener) {
+        ShadowScheduler.addChangeListener(listener);
+    }
+
+    /**
+     * Removes a listener added with {@link
+     * #addDeferredShadowListener(ChangeListener)}.
+     *
+     * @param listener the listener to remove
+     */
+    public static void removeDeferredShadowListener(ChangeListener listener) {
+        ShadowScheduler.removeChangeListener(listener);
+    }
+
+    /**
+     * Renders the given shadows into the shared cache on background threads,
+     * so that painting them later doesn't need to render them. The shadows
+     * are rendered as they would be painted with the current settings, i.e.
+     * as nine-patches, with tight bounds and at quantized levels if enabled,
+     * and at the {@link ShadowSpec#getQuality() quality of the spec} or the
+     * default quality, so settings should not be changed afterwards.
+     *
+     * @param specs the shadows to render
+     * @return a future that completes once all shadows are cached
+     * @see #paint(Graphics, int, int, int, double, Type)
+     */
+    public static Future<Void> prewarm(Collection<ShadowSpec> specs) {
+        Set<ShadowCache.Key> keys = new LinkedHashSet<>();
+        for (ShadowSpec spec : specs) {
+            for (double level : quantize(spec.getLevel())) {
+                addPaintKey(keys, spec, level);
+            }
+        }
+        return ShadowRenderService.submitAll(keys);
+    }
+
+    private static volatile float downsamplingThreshold = Float.POSITIVE_INFINITY;
+
+    /**
+     * Gets the blur radius from which shadows are blurred at a reduced
+     * resolution.
+     *
+     * @return the downsampling threshold, or {@link Float#POSITIVE_INFINITY}
+     *         if shadows are always blurred at full resolution
+     */
+    public static float getDownsamplingThreshold() {
+        return downsamplingThreshold;
+    }
+
+    /**
+     * Sets the blur radius from which shadows are blurred at a reduced
+     * resolution. Layers with a blur radius of at least the threshold are
+     * blurred at half resolution, and layers with a blur radius of at least
+     * twice the threshold are blurred at quarter resolution, then scaled back
+     * up bilinearly. Soft, wide shadows look nearly the same, but are cheaper
+     * to render. With a threshold of {@code 10}, the alpha of every pixel
+     * stays within {@code 4/255} of the shadow blurred at full resolution.
+     * By default, shadows are always blurred at full resolution.
+     *
+     * @param threshold the downsampling threshold, or {@link
+     *                  Float#POSITIVE_INFINITY} to disable downsampling
+     * @see FastGaussianBlur#blurAlpha(BufferedImage, double, int, int)
+     */
+    public static void setDownsamplingThreshold(float threshold) {
+        if (!(threshold > 0)) {
+            throw new IllegalArgumentException("Downsampling threshold must be positive");
+        }
+        downsamplingThreshold = threshold;
+    }
+
+    /**
+     * Gets the factor to reduce the resolution by when blurring a shadow layer
+     * with the given radius. Precise shadows are always blurred at full
+     * resolution.
+     */
+    private static int getDownsampling(float radius, Quality quality) {
+        if (quality == Quality.PRECISE) {
+            return 1;
+        }
+        float threshold = downsamplingThreshold;
+        if (radius >= 2 * threshold) {
+            return 4;
+        } else if (radius >= threshold) {
+            return 2;
+        }
+        return 1;
+    }
+
+    private static volatile boolean tightBoundsEnabled = true;
+
+    /**
+     * Checks if painted shadows are cropped to the area they cover at their
+     * elevation level.
+     *
+     * @return {@code true} if tight bounds are enabled
+     */
+    public static boolean isTightBoundsEnabled() {
+        return tightBoundsEnabled;
+    }
+
+    /**
+     * Enables or disables cropping painted shadows to the area they cover at
+     * their elevation level. Components reserve room for the deepest shadow
+     * around them (see {@link #OFFSET_TOP}, {@link #OFFSET_LEFT}, {@link
+     * #OFFSET_BOTTOM} and {@link #OFFSET_RIGHT}), but at low levels a shadow
+     * only reaches a few pixels beyond the component. If enabled, only the
+     * part within the reach of the blur and the offset of both layers is
+     * rendered, cached and painted, at its position within the component. It
+     * looks exactly the same. Images returned by {@link #render(int, int, int,
+     * double, Type)} always span the whole component. It is enabled by
+     * default.
+     *
+     * @param enabled {@code true} to enable tight bounds
+     * @see #paint(Graphics, int, int, int, double, Type)
+     */
+    public static void setTightBoundsEnabled(boolean enabled) {
+        tightBoundsEnabled = enabled;
+    }
+
+    /**
+     * Gets the area of a shadow image that the shadow covers at the given
+     * level, in device pixels. Beyond the reach of the blur around the offset
+     * outline of each layer, the image is fully transparent. If a layer is
+     * blurred at a reduced resolution, the area is aligned to the reduced
+     * pixels, so the cropped shadow is identical to the same area of the full
+     * shadow.
+     */
+    private static Rectangle getShadowBounds(int width, int height, double level, Type type, Renderer renderer,
+                                             double scale, Quality quality) {
+        Rectangle bounds = null;
+        for (int layer = 1; layer <= 2; layer++) {
+            float blur = (layer == 1 ? radius1 : radius2).getInterpolatedValueAt(level / 5) * (float) scale;
+            double offset = (layer == 1 ? offset1 : offset2).getInterpolatedValueAt(level / 5) * scale;
+            double reach;
+            int alignment = 1;
+            if (renderer == Renderer.ANALYTIC) {
+                reach = type == Type.CIRCULAR ? 8 * blur : 4 * blur + 1;
+            } else {
+                alignment = getDownsampling(blur, quality);
+                reach = getExtent(blur, alignment, quality);
+            }
+            double left = OFFSET_LEFT * scale;
+            double right = width - OFFSET_RIGHT * scale;
+            double top = OFFSET_TOP * scale + offset;
+            double bottom = type == Type.CIRCULAR ? top + right - left : height - OFFSET_BOTTOM * scale + offset;
+            int x0 = Math.max(0, (int) Math.floor(left - reach) - 1);
+            int y0 = Math.max(0, (int) Math.floor(top - reach) - 1);
+            x0 -= x0 % alignment;
+            y0 -= y0 % alignment;
+            Rectangle layerBounds = new Rectangle(x0, y0, (int) Math.ceil(right + reach) + 1 - x0,
+                    (int) Math.ceil(bottom + reach) + 1 - y0);
+            bounds = bounds == null ? layerBounds : bounds.union(layerBounds);
+        }
+        bounds = bounds.intersection(new Rectangle(0, 0, width, height));
+        return bounds.isEmpty() ? new Rectangle(0, 0, width, height) : bounds;
+    }
+
+    /**
+     * Gets the area of the shadow identified by the given key that its image
+     * spans, in device pixels.
+     */
+    private static Rectangle getBounds(ShadowCache.Key key) {
+        int height = key.getType() == Type.CIRCULAR ? getCircularHeight(key.getWidth(), key.getScale()) : key.getHeight();
+        if (!key.isTight()) {
+            return new Rectangle(0, 0, key.getWidth(), height);
+        }
+        return getShadowBounds(key.getWidth(), height, key.getLevel(), key.getType(), key.getRenderer(), key.getScale(),
+                key.getQuality());
+    }
+
+    /**
+     * Gets the height of the image of a circular shadow, in device pixels.
+     */
+    private static int getCircularHeight(int diameter, double scale) {
+        return diameter + scale(OFFSET_TOP, scale) + scale(OFFSET_BOTTOM, scale);
+    }
+
+    /**
+     * Creates a {@link NinePatch} of the shadow projected from a square
+     * component with the given elevation and border radius. The nine-patch
+     * can be stretched to any size at least as large as its minimum size, and
+     * the result is identical to a shadow rendered for that size.
+     *
+     * @param level        the elevation level [0~5]
+     * @param borderRadius an applicable radius to the border of the shadow
+     * @return A {@link NinePatch} of the shadow.
+     */
+    public static NinePatch getNinePatch(double level, int borderRadius) {
+        return getNinePatch(level, borderRadius, renderer, 1, false, getQuality(renderer, defaultQuality));
+    }
+
+    private static NinePatch getNinePatch(double level, int borderRadius, Renderer renderer, double scale,
+                                          boolean tight, Quality quality) {
+        int inset = getNinePatchInset(level, borderRadius, scale, quality);
+        ShadowCache.Key key = getNinePatchKey(inset, level, borderRadius, renderer, scale, tight, quality);
+        Rectangle bounds = getBounds(key);
+        ShadowCache cache = ShadowCache.getShared();
+        BufferedImage image = cache.get(key);
+        if (image == null) {
+            image = lookup(key);
+            if (image == null) {
+                image = renderShadow(key.getWidth(), key.getHeight(), level, borderRadius, renderer, scale, bounds,
+                        key.getQuality());
+            }
+            cache.put(key, image);
+        }
+        return createNinePatch(image, inset, bounds, scale);
+    }
+
+    private static ShadowCache.Key getNinePatchKey(int inset, double level, int borderRadius, Renderer renderer,
+                                                   double scale, boolean tight, Quality quality) {
+        return new ShadowCache.Key(scale(OFFSET_LEFT, scale) + scale(OFFSET_RIGHT, scale) + 2 * inset + 1,
+                scale(OFFSET_TOP, scale) + scale(OFFSET_BOTTOM, scale) + 2 * inset + 1,
+                borderRadius, level, Type.SQUARE, renderer, scale, tight, quality);
+    }
+
+    /**
+     * Creates a nine-patch from a template that spans the given area of the
+     * full template.
+     */
+    private static NinePatch createNinePatch(BufferedImage template, int inset, Rectangle bounds, double scale) {
+        int left = scale(OFFSET_LEFT, scale) + inset;
+        int top = scale(OFFSET_TOP, scale) + inset;
+        return new NinePatch(template, left - bounds.x, top - bounds.y,
+                bounds.x + bounds.width - left - 1, bounds.y + bounds.height - top - 1);
+    }
+
+    /**
+     * Gets the distance from the borders of a square component beyond which
+     * its shadow doesn't change anymore, i.e. beyond the reach of the blur,
+     * the offset and the rounded corners, in device pixels.
+     */
+    private static int getNinePatchInset(double level, int borderRadius, double scale, Quality quality) {
+        float blur1 = radius1.getInterpolatedValueAt(level / 5) * (float) scale;
+        float blur2 = radius2.getInterpolatedValueAt(level / 5) * (float) scale;
+        int extent1 = getExtent(blur1, getDownsampling(blur1, quality), quality)
+                + (int) Math.ceil(offset1.getInterpolatedValueAt(level / 5) * scale);
+        int extent2 = getExtent(blur2, getDownsampling(blur2, quality), quality)
+                + (int) Math.ceil(offset2.getInterpolatedValueAt(level / 5) * scale);
+        return Math.max(extent1, extent2) + scale(borderRadius, scale) + 1;
+    }
+
+    /**
+     * Converts a length in logical pixels to device pixels, rounding up.
+     */
+    private static int scale(int length, double scale) {
+        return (int) Math.ceil(length * scale);
+    }
     
     /**
      * Creates a {@link BufferedImage} containing a shadow projected from a
@@ -87,97 +650,703 @@ public class MaterialShadow {
      * @return A {@link BufferedImage} with the contents of the shadow for a
      *         circular component of the given radius.
      */
-    public static BufferedImage renderShadow(int width, int height, double level) {
-        return renderShadow(width, height, level, 3);
+    public static BufferedImage renderShadow(int width, int height, double level) {
+        return renderShadow(width, height, level, 3);
+    }
+
+    /**
+     * Creates a {@link BufferedImage} containing a shadow projected from a
+     * square component of the given width and height.
+     *
+     * @param width  the component's width, inpixels
+     * @param height the component's height, inpixels
+     * @param level  the elevation level [0~5]
+     * @param borderRadius an applicable radius to the border of the shadow
+     * @return A {@link BufferedImage} with the contents of the shadow for a
+     *         circular component of the given radius.
+     */
+    public static BufferedImage renderShadow(int width, int height, double level, int borderRadius) {
+        return renderShadow(width, height, level, borderRadius, renderer);
+    }
+
+    /**
+     * Creates a {@link BufferedImage} containing a shadow projected from a
+     * square component of the given width and height, using the given
+     * renderer.
+     *
+     * @param width  the component's width, inpixels
+     * @param height the component's height, inpixels
+     * @param level  the elevation level [0~5]
+     * @param borderRadius an applicable radius to the border of the shadow
+     * @param renderer the renderer to use
+     * @return A {@link BufferedImage} with the contents of the shadow.
+     */
+    public static BufferedImage renderShadow(int width, int height, double level, int borderRadius, Renderer renderer) {
+        return renderShadow(width, height, level, borderRadius, renderer, 1, new Rectangle(0, 0, width, height),
+                defaultQuality);
+    }
+
+    /**
+     * Creates a {@link BufferedImage} containing the given area of a shadow
+     * projected from a square component, rendered at the given scale. The
+     * width, height and area are given in device pixels, everything else is
+     * scaled.
+     */
+    private static BufferedImage renderShadow(int width, int height, double level, int borderRadius, Renderer renderer,
+                                              double scale, Rectangle bounds, Quality quality) {
+        if (level < 0 || level > 5) {
+            throw new IllegalArgumentException("Shadow level must be between 1 and 5 (inclusive)");
+        }
+
+        BufferedImage shadow = createImage(bounds.width, bounds.height);
+        if (width > 0 && height > 0 && level != 0 && renderer == Renderer.ANALYTIC) {
+            makeAnalyticShadow(shadow, bounds, width, height, level, borderRadius, scale);
+        } else if (width > 0 && height > 0 && level != 0) {
+            makeShadow(shadow, bounds, level,
+                    createRoundRectangle(width, height, offset1.getInterpolatedValueAt(level / 5), borderRadius, scale),
+                    createRoundRectangle(width, height, offset2.getInterpolatedValueAt(level / 5), borderRadius, scale), scale,
+                    quality);
+        }
+
+        return shadow;
+    }
+
+    /**
+     * Creates a {@link BufferedImage} containing a shadow projected from a
+     * circular component of the given radius.
+     *
+     * @param radius the radius length, in pixels
+     * @param level  the elevation level [0~5]
+     * @return A {@link BufferedImage} with the contents of the shadow for a
+     *         circular component of the given radius.
+     */
+    public static BufferedImage renderCircularShadow(int radius, double level) {
+        return renderCircularShadow(radius, level, renderer);
+    }
+
+    /**
+     * Creates a {@link BufferedImage} containing a shadow projected from a
+     * circular component of the given radius, using the given renderer.
+     *
+     * @param radius the radius length, in pixels
+     * @param level  the elevation level [0~5]
+     * @param renderer the renderer to use
+     * @return A {@link BufferedImage} with the contents of the shadow for a
+     *         circular component of the given radius.
+     */
+    public static BufferedImage renderCircularShadow(int radius, double level, Renderer renderer) {
+        return renderCircularShadow(radius, level, renderer, 1,
+                new Rectangle(0, 0, radius, getCircularHeight(radius, 1)), defaultQuality);
+    }
+
+    /**
+     * Creates a {@link BufferedImage} containing the given area of a shadow
+     * projected from a circular component, rendered at the given scale. The
+     * diameter and area are given in device pixels, everything else is
+     * scaled.
+     */
+    private static BufferedImage renderCircularShadow(int radius, double level, Renderer renderer, double scale,
+                                                      Rectangle bounds, Quality quality) {
+        if (level < 0 || level > 5) {
+            throw new IllegalArgumentException("Shadow level must be between 1 and 5 (inclusive)");
+        }
+
+        BufferedImage shadow = createImage(bounds.width, bounds.height);
+        if (level != 0 && renderer == Renderer.ANALYTIC) {
+            makeRadialShadow(shadow, bounds, radius, level, scale);
+        } else if (level != 0) {
+            makeShadow(shadow, bounds, level, createCircle(radius, offset1.getInterpolatedValueAt(level / 5), scale),
+                    createCircle(radius, offset2.getInterpolatedValueAt(level / 5), scale), scale, quality);
+        }
+        return shadow;
+    }
+
+    /**
+     * Creates a {@link BufferedImage} containing the given area of a blurred
+     * shadow projected from a component of an arbitrary outline, rendered at
+     * the given scale.
+     */
+    private static BufferedImage renderOutlineShadow(ShadowOutline outline, double level, double scale,
+                                                     Rectangle bounds, Quality quality) {
+        if (level < 0 || level > 5) {
+            throw new IllegalArgumentException("Shadow level must be between 1 and 5 (inclusive)");
+        }
+
+        BufferedImage shadow = createImage(bounds.width, bounds.height);
+        if (level != 0) {
+            float s = (float) scale;
+            makeShadow(shadow, bounds, level, outline.createShape(offset1.getInterpolatedValueAt(level / 5) * s),
+                    outline.createShape(offset2.getInterpolatedValueAt(level / 5) * s), scale, quality);
+        }
+        return shadow;
+    }
+
+    /**
+     * Creates the key of the shadow of an outline, given in device pixels.
+     * The outline is moved so that its bounds start at the offsets of the
+     * shadow, keeping its position within a pixel, so that identical
+     * outlines at different positions share a shadow. The image of the shadow
+     * starts at {@link #getOutlineOrigin(Shape, double)}.
+     * @return the key, or {@code null} if the outline is empty
+     */
+    private static ShadowCache.Key createOutlineKey(Shape outline, double level, double scale, boolean tight,
+                                                    Quality quality) {
+        Rectangle2D bounds = outline.getBounds2D();
+        if (bounds.isEmpty()) {
+            return null;
+        }
+        double x = Math.floor(bounds.getX());
+        double y = Math.floor(bounds.getY());
+        int left = scale(OFFSET_LEFT, scale);
+        int top = scale(OFFSET_TOP, scale);
+        return new ShadowCache.Key(new ShadowOutline(outline, left - x, top - y),
+                left + (int) Math.ceil(bounds.getMaxX() - x) + scale(OFFSET_RIGHT, scale),
+                top + (int) Math.ceil(bounds.getMaxY() - y) + scale(OFFSET_BOTTOM, scale), level, scale, tight,
+                quality);
+    }
+
+    /**
+     * Gets the position the full image of the shadow of an outline, given in
+     * device pixels, is painted at.
+     */
+    private static Point getOutlineOrigin(Shape outline, double scale) {
+        Rectangle2D bounds = outline.getBounds2D();
+        return new Point((int) Math.floor(bounds.getX()) - scale(OFFSET_LEFT, scale),
+                (int) Math.floor(bounds.getY()) - scale(OFFSET_TOP, scale));
+    }
+
+    /**
+     * Creates an image to render a shadow into. Shadows are stored with
+     * premultiplied alpha, which is what Java2D's blit loops and the
+     * accelerated pipelines work with, so painting them needs no conversion.
+     * Shadows are rendered independently of any screen and shared between
+     * all of them, so no {@link GraphicsConfiguration#createCompatibleImage(int,
+     * int, int) compatible image} is used. If compact storage is enabled,
+     * shadows are stored as alpha masks instead.
+     */
+    private static BufferedImage createImage(int width, int height) {
+        if (compactStorageEnabled) {
+            return new BufferedImage(width, height, BufferedImage.TYPE_BYTE_INDEXED, ALPHA_MASK);
+        }
+        return new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB_PRE);
+    }
+
+    private static IndexColorModel createAlphaMask(Color color) {
+        byte[] red = new byte[256];
+        byte[] green = new byte[256];
+        byte[] blue = new byte[256];
+        byte[] alpha = new byte[256];
+        for (int i = 0; i < 256; i++) {
+            red[i] = (byte) color.getRed();
+            green[i] = (byte) color.getGreen();
+            blue[i] = (byte) color.getBlue();
+            alpha[i] = (byte) ((i * color.getAlpha() + 127) / 255);
+        }
+        return new IndexColorModel(8, 256, red, green, blue, alpha);
+    }
+
+    private static boolean isAlphaMask(BufferedImage shadow) {
+        return shadow.getColorModel() instanceof IndexColorModel;
+    }
+
+    /**
+     * Writes rows of a shadow, given as alpha values shifted to where its
+     * storage format keeps them.
+     */
+    private static void setRows(BufferedImage shadow, int y, int height, int[] pixels) {
+        if (isAlphaMask(shadow)) {
+            shadow.getRaster().setPixels(0, y, shadow.getWidth(), height, pixels);
+        } else {
+            shadow.getRaster().setDataElements(0, y, shadow.getWidth(), height, pixels);
+        }
+    }
+
+    /**
+     * Gets a black shadow in the given color. An alpha mask shares its pixels
+     * with the colored shadow, so only its color model is replaced. Other
+     * shadows are copied, without blurring them again.
+     */
+    private static BufferedImage tint(BufferedImage shadow, Color color) {
+        if (isAlphaMask(shadow)) {
+            return new BufferedImage(createAlphaMask(color), shadow.getRaster(), false, null);
+        }
+        int width = shadow.getWidth();
+        int height = shadow.getHeight();
+        int[] pixels = (int[]) shadow.getRaster().getDataElements(0, 0, width, height, null);
+        int red = color.getRed();
+        int green = color.getGreen();
+        int blue = color.getBlue();
+        int opacity = color.getAlpha();
+        for (int i = 0; i < pixels.length; i++) {
+            int a = ((pixels[i] >>> 24) * opacity + 127) / 255;
+            pixels[i] = a << 24 | (red * a + 127) / 255 << 16 | (green * a + 127) / 255 << 8 | (blue * a + 127) / 255;
+        }
+        BufferedImage tinted = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB_PRE);
+        tinted.getRaster().setDataElements(0, 0, width, height, pixels);
+        return tinted;
+    }
+
+    /**
+     * Blurs a shadow layer with the given quality.
+     */
+    static void blur(int[] alpha, int width, int height, float radius, Quality quality) {
+        switch (quality) {
+            case FAST:
+                FastGaussianBlur.blurAlpha(alpha, width, height, radius, getDownsampling(radius, quality), 2);
+                break;
+            case PRECISE:
+                FastGaussianBlur.blurAlphaExact(alpha, width, height, radius);
+                break;
+            default:
+                FastGaussianBlur.blurAlpha(alpha, width, height, radius, getDownsampling(radius, quality));
+                break;
+        }
+    }
+
+    /**
+     * Gets the distance, in device pixels, that blurring a shadow layer with
+     * the given quality spreads it.
+     */
+    private static int getExtent(float radius, int downsampling, Quality quality) {
+        switch (quality) {
+            case FAST:
+                return FastGaussianBlur.getExtent(radius, downsampling, 2);
+            case PRECISE:
+                return FastGaussianBlur.getExactExtent(radius);
+            default:
+                return FastGaussianBlur.getExtent(radius, downsampling);
+        }
+    }
+
+    /**
+     * Gets the quality a shadow is rendered with by the given renderer. Only
+     * blurred shadows have different qualities.
+     */
+    private static Quality getQuality(Renderer renderer, Quality quality) {
+        return renderer == Renderer.ANALYTIC ? Quality.STANDARD : quality;
+    }
+
+    /**
+     * Renders both layers of a blurred shadow into a single image. The outline
+     * of each layer is filled into the image and read back as an alpha
+     * channel, both channels are blurred, and then combined into the image in
+     * a single pass. The channels are read into the alpha planes that the
+     * blur reuses on each thread, so apart from the image itself, nothing of
+     * its size is allocated. The image is never accessed through its pixel
+     * array, so it can still be cached by the accelerated pipelines. The
+     * image spans the given area of the component.
+     */
+    private static void makeShadow(BufferedImage shadow, Rectangle bounds, double level, Shape shape1, Shape shape2,
+                                   double scale, Quality quality) {
+        int width = shadow.getWidth();
+        int height = shadow.getHeight();
+        int shift = isAlphaMask(shadow) ? 0 : 24;
+        int size = width * height;
+        int[] alpha1 = fillAlpha(shadow, bounds.x, bounds.y, shape1, opacity1.getInterpolatedValueAt(level / 5),
+                FastGaussianBlur.getAlphaPlane(0, size));
+        int[] alpha2 = fillAlpha(shadow, bounds.x, bounds.y, shape2, opacity2.getInterpolatedValueAt(level / 5),
+                FastGaussianBlur.getAlphaPlane(1, size));
+        float blur1 = radius1.getInterpolatedValueAt(level / 5) * (float) scale;
+        float blur2 = radius2.getInterpolatedValueAt(level / 5) * (float) scale;
+        blur(alpha1, width, height, blur1, quality);
+        blur(alpha2, width, height, blur2, quality);
+        for (int i = 0; i < size; i++) {
+            int a = alpha1[i];
+            int b = alpha2[i];
+            alpha1[i] = b + (a * (255 - b) + 127) / 255 << shift;
+        }
+        setRows(shadow, 0, height, alpha1);
+    }
+
+    /**
+     * Fills a shape into an empty image and reads its alpha channel into the
+     * given buffer, leaving the image empty again. The image starts at the
+     * given position of the component. Alpha masks are drawn on as gray
+     * levels, with white over black, so that the shape is rasterized exactly
+     * like on a transparent image.
+     */
+    private static int[] fillAlpha(BufferedImage image, int x, int y, Shape shape, float opacity, int[] alpha) {
+        int width = image.getWidth();
+        int height = image.getHeight();
+        boolean mask = isAlphaMask(image);
+        Graphics2D g = mask ? new BufferedImage(GRAY, image.getRaster(), false, null).createGraphics()
+                : image.createGraphics();
+        int value = (int) (opacity * 255 + 0.5f);
+        g.setColor(new Color(mask ? 255 : 0, mask ? 255 : 0, mask ? 255 : 0, value));
+        g.translate(-x, -y);
+        g.fill(shape);
+        g.translate(x, y);
+        if (mask) {
+            image.getRaster().getPixels(0, 0, width, height, alpha);
+        } else {
+            image.getRaster().getDataElements(0, 0, width, height, alpha);
+            for (int i = 0; i < width * height; i++) {
+                alpha[i] >>>= 24;
+            }
+        }
+        g.setComposite(AlphaComposite.Clear);
+        g.fillRect(0, 0, width, height);
+        g.dispose();
+        return alpha;
+    }
+
+    private static Shape createRoundRectangle(int width, int height, float topOffset, int borderRadius, double scale) {
+        float s = (float) scale;
+        return new RoundRectangle2D.Float(OFFSET_LEFT * s, OFFSET_TOP * s + topOffset * s,
+                width - OFFSET_LEFT * s - OFFSET_RIGHT * s, height - OFFSET_TOP * s - OFFSET_BOTTOM * s,
+                borderRadius * 2 * s, borderRadius * 2 * s);
+    }
+
+    private static Shape createCircle(int width, float topOffset, double scale) {
+        double diameter = width - OFFSET_LEFT * scale - OFFSET_RIGHT * scale;
+        return new Ellipse2D.Double(OFFSET_LEFT * scale, (OFFSET_TOP + topOffset) * scale, diameter, diameter);
+    }
+
+    /**
+     * Renders both layers of a square shadow without blurring. A rectangle
+     * blurred with a Gaussian is the product of two blurred edges, one along
+     * each axis, which have a closed form using the error function. The
+     * rounded corners are then subtracted row by row, each row of a corner
+     * being a small rectangle itself. The image spans the given area of the
+     * component.
+     */
+    private static void makeAnalyticShadow(BufferedImage shadow, Rectangle bounds, int width, int height, double level,
+                                           int borderRadius, double scale) {
+        double cornerWidth = Math.max(0, Math.min(borderRadius * scale, (width - (OFFSET_LEFT + OFFSET_RIGHT) * scale) / 2));
+        double cornerHeight = Math.max(0, Math.min(borderRadius * scale, (height - (OFFSET_TOP + OFFSET_BOTTOM) * scale) / 2));
+        float[] alpha1 = new float[bounds.width * bounds.height];
+        float[] alpha2 = new float[bounds.width * bounds.height];
+        fillAnalyticShadow(alpha1, bounds, width, height, opacity1.getInterpolatedValueAt(level / 5),
+                radius1.getInterpolatedValueAt(level / 5), offset1.getInterpolatedValueAt(level / 5), cornerWidth, cornerHeight, scale);
+        fillAnalyticShadow(alpha2, bounds, width, height, opacity2.getInterpolatedValueAt(level / 5),
+                radius2.getInterpolatedValueAt(level / 5), offset2.getInterpolatedValueAt(level / 5), cornerWidth, cornerHeight, scale);
+        composeLayers(shadow, alpha1, alpha2);
+    }
+
+    /**
+     * Writes two layers of alpha values into a black shadow, one on top of the
+     * other.
+     */
+    private static void composeLayers(BufferedImage shadow, float[] alpha1, float[] alpha2) {
+        int width = shadow.getWidth();
+        int height = shadow.getHeight();
+        int shift = isAlphaMask(shadow) ? 0 : 24;
+        int[] row = new int[width];
+        for (int y = 0, i = 0; y < height; y++) {
+            for (int x = 0; x < width; x++, i++) {
+                float a = Math.max(0, alpha1[i]);
+                float b = Math.max(0, alpha2[i]);
+                row[x] = (int) ((a + b * (1 - a)) * 255 + 0.5f) << shift;
+            }
+            setRows(shadow, y, 1, row);
+        }
     }
 
     /**
-     * Creates a {@link BufferedImage} containing a shadow projected from a
-     * square component of the given width and height.
-     *
-     * @param width  the component's width, inpixels
-     * @param height the component's height, inpixels
-     * @param level  the elevation level [0~5]
-     * @param borderRadius an applicable radius to the border of the shadow
-     * @return A {@link BufferedImage} with the contents of the shadow for a
-     *         circular component of the given radius.
+     * Computes the alpha values of one layer of a square shadow. Like {@link
+     * RoundRectangle2D}, the corners become elliptical if the border radius
+     * exceeds half of the width or height. The alpha values span the given
+     * area of the component.
      */
-    public static BufferedImage renderShadow(int width, int height, double level, int borderRadius) {
-        if (level < 0 || level > 5) {
-            throw new IllegalArgumentException("Shadow level must be between 1 and 5 (inclusive)");
+    private static void fillAnalyticShadow(float[] alpha, Rectangle bounds, int width, int height, float opacity,
+                                           float sigma, float topOffset, double cornerWidth, double cornerHeight,
+                                           double scale) {
+        double left = OFFSET_LEFT * scale - bounds.x;
+        double right = width - OFFSET_RIGHT * scale - bounds.x;
+        double top = (OFFSET_TOP + topOffset) * scale - bounds.y;
+        double bottom = height - (OFFSET_BOTTOM - topOffset) * scale - bounds.y;
+        sigma *= scale;
+        width = bounds.width;
+        height = bounds.height;
+        fillBlurredRectangle(alpha, width, height, left, right, top, bottom, sigma, opacity);
+        for (int v = 0; v < cornerHeight; v++) {
+            double d = (cornerHeight - v - 0.5) / cornerHeight;
+            double cut = d > 0 ? cornerWidth * (1 - Math.sqrt(1 - d * d)) : 0;
+            if (cut > 0) {
+                fillBlurredRectangle(alpha, width, height, left, left + cut, top + v, top + v + 1, sigma, -opacity);
+                fillBlurredRectangle(alpha, width, height, right - cut, right, top + v, top + v + 1, sigma, -opacity);
+                fillBlurredRectangle(alpha, width, height, left, left + cut, bottom - v - 1, bottom - v, sigma, -opacity);
+                fillBlurredRectangle(alpha, width, height, right - cut, right, bottom - v - 1, bottom - v, sigma, -opacity);
+            }
         }
+    }
 
-        BufferedImage shadow = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
-        if (width > 0 && height > 0 && level != 0) {
-            BufferedImage shadow2 = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
-            Graphics2D g = shadow.createGraphics();
-            g.setComposite(AlphaComposite.SrcOver);
+    /**
+     * Adds a blurred rectangle with the given opacity to an alpha channel.
+     * Pixels further away from the rectangle than four standard deviations
+     * are skipped.
+     */
+    private static void fillBlurredRectangle(float[] alpha, int width, int height, double left, double right,
+                                             double top, double bottom, double sigma, double opacity) {
+        double reach = 4 * sigma + 1;
+        int x0 = Math.max(0, (int) Math.floor(left - reach));
+        int x1 = Math.min(width, (int) Math.ceil(right + reach));
+        int y0 = Math.max(0, (int) Math.floor(top - reach));
+        int y1 = Math.min(height, (int) Math.ceil(bottom + reach));
+        if (x0 >= x1 || y0 >= y1) {
+            return;
+        }
+        double[] columns = new double[x1 - x0];
+        for (int x = x0; x < x1; x++) {
+            columns[x - x0] = opacity * (Gaussian.cdf(x + 0.5 - left, sigma) - Gaussian.cdf(x + 0.5 - right, sigma));
+        }
+        for (int y = y0; y < y1; y++) {
+            double rowValue = Gaussian.cdf(y + 0.5 - top, sigma) - Gaussian.cdf(y + 0.5 - bottom, sigma);
+            for (int x = x0, i = y * width + x0; x < x1; x++, i++) {
+                alpha[i] += columns[x - x0] * rowValue;
+            }
+        }
+    }
 
-            makeShadow(shadow, opacity1.getInterpolatedValueAt(level / 5), radius1.getInterpolatedValueAt(level / 5),
-                    0, offset1.getInterpolatedValueAt(level / 5), borderRadius);
-            makeShadow(shadow2, opacity2.getInterpolatedValueAt(level / 5), radius2.getInterpolatedValueAt(level / 5),
-                    0, offset2.getInterpolatedValueAt(level / 5), borderRadius);
-            g.drawImage(shadow2, 0, 0, null);
+    /**
+     * Renders both layers of a circular shadow without blurring. A blurred
+     * disk is radially symmetric, so its alpha is only computed along a
+     * single radius and then swept around the center of each layer. The image
+     * spans the given area of the component.
+     */
+    private static void makeRadialShadow(BufferedImage shadow, Rectangle bounds, int width, double level, double scale) {
+        float[] alpha1 = new float[bounds.width * bounds.height];
+        float[] alpha2 = new float[bounds.width * bounds.height];
+        fillRadialShadow(alpha1, bounds, width, opacity1.getInterpolatedValueAt(level / 5),
+                radius1.getInterpolatedValueAt(level / 5), offset1.getInterpolatedValueAt(level / 5), scale);
+        fillRadialShadow(alpha2, bounds, width, opacity2.getInterpolatedValueAt(level / 5),
+                radius2.getInterpolatedValueAt(level / 5), offset2.getInterpolatedValueAt(level / 5), scale);
+        composeLayers(shadow, alpha1, alpha2);
+    }
 
-            g.dispose();
+    /**
+     * Computes the alpha values of one layer of a circular shadow. The radial
+     * profile is sampled at a quarter of a pixel, or an eighth of the blur
+     * radius if that is coarser, and interpolated linearly between the squared
+     * distances of the samples. Each row is swept from the outside towards the
+     * center, so the squared distance only decreases and the current sample
+     * can be tracked without taking a square root per pixel. Only the left
+     * half of each row is computed and then mirrored to the right half, which
+     * requires the given area of the component to be centered horizontally.
+     */
+    private static void fillRadialShadow(float[] alpha, Rectangle bounds, int width, float opacity, float sigma,
+                                         float topOffset, double scale) {
+        double diskRadius = (width - (OFFSET_LEFT + OFFSET_RIGHT) * scale) / 2;
+        if (diskRadius <= 0) {
+            return;
+        }
+        double centerX = OFFSET_LEFT * scale + diskRadius - bounds.x;
+        double centerY = (OFFSET_TOP + topOffset) * scale + diskRadius - bounds.y;
+        width = bounds.width;
+        int height = bounds.height;
+        sigma *= scale;
+        double inner = Math.max(0, diskRadius - 8 * sigma);
+        double outer = diskRadius + 8 * sigma;
+        double step = Math.max(0.25, sigma / 8);
+        int samples = (int) Math.ceil(outer / step) + 2;
+        float[] profile = new float[samples];
+        double[] squares = new double[samples];
+        for (int i = 0; i < samples; i++) {
+            profile[i] = (float) (opacity * Gaussian.disk(i * step, diskRadius, sigma));
+            squares[i] = i * step * i * step;
+        }
+        double[] slopes = new double[samples - 1];
+        for (int i = 0; i < samples - 1; i++) {
+            slopes[i] = (profile[i + 1] - profile[i]) / (squares[i + 1] - squares[i]);
         }
 
-        return shadow;
+        double innerSquared = inner * inner;
+        double outerSquared = outer * outer;
+        int mirror = (int) Math.round(2 * centerX) - 1;
+        for (int y = 0; y < height; y++) {
+            double dy = y + 0.5 - centerY;
+            if (dy * dy >= outerSquared) {
+                continue;
+            }
+            int row = y * width;
+            int from = Math.max(0, (int) Math.floor(centerX - Math.sqrt(outerSquared - dy * dy)));
+            double dx = from + 0.5 - centerX;
+            int sample = Math.min((int) (Math.sqrt(dx * dx + dy * dy) / step), samples - 2);
+            for (int x = from; 2 * x <= mirror; x++) {
+                dx = x + 0.5 - centerX;
+                double distanceSquared = dx * dx + dy * dy;
+                float value;
+                if (distanceSquared <= innerSquared) {
+                    value = opacity;
+                } else {
+                    while (sample > 0 && squares[sample] > distanceSquared) {
+                        sample--;
+                    }
+                    value = (float) (profile[sample] + slopes[sample] * (distanceSquared - squares[sample]));
+                }
+                alpha[row + x] = value;
+                if (mirror - x < width) {
+                    alpha[row + mirror - x] = value;
+                }
+            }
+        }
     }
 
     /**
-     * Creates a {@link BufferedImage} containing a shadow projected from a
-     * circular component of the given radius.
-     *
-     * @param radius the radius length, in pixels
-     * @param level  the elevation level [0~5]
-     * @return A {@link BufferedImage} with the contents of the shadow for a
-     *         circular component of the given radius.
+     * Renders the shadow identified by the given key, without looking it up in
+     * the cache. Shadows in the {@link #setAtlas(ShadowAtlas) atlas} are read
+     * from it instead. Large square shadows are stretched from a nine-patch if
+     * nine-patches are enabled.
+     * @param key the key of the shadow
+     * @return A {@link BufferedImage} with the contents of the shadow.
      */
-    public static BufferedImage renderCircularShadow(int radius, double level) {
-        if (level < 0 || level > 5) {
-            throw new IllegalArgumentException("Shadow level must be between 1 and 5 (inclusive)");
+    static BufferedImage render(ShadowCache.Key key) {
+        BufferedImage image = lookup(key);
+        if (image != null) {
+            return image;
         }
+        Rectangle bounds = getBounds(key);
+        if (key.getOutline() != null) {
+            return renderOutlineShadow(key.getOutline(), key.getLevel(), key.getScale(), bounds, key.getQuality());
+        }
+        switch (key.getType()) {
+            case CIRCULAR:
+                return renderCircularShadow(key.getWidth(), key.getLevel(), key.getRenderer(), key.getScale(), bounds,
+                        key.getQuality());
+            default:
+                if (ninePatchEnabled) {
+                    int inset = getNinePatchInset(key.getLevel(), key.getBorderRadius(), key.getScale(),
+                            key.getQuality());
+                    ShadowCache.Key template = getNinePatchKey(inset, key.getLevel(), key.getBorderRadius(),
+                            key.getRenderer(), key.getScale(), key.isTight(), key.getQuality());
+                    if (key.getWidth() >= template.getWidth() && key.getHeight() >= template.getHeight()) {
+                        return getNinePatch(key.getLevel(), key.getBorderRadius(), key.getRenderer(), key.getScale(),
+                                key.isTight(), key.getQuality()).render(bounds.width, bounds.height);
+                    }
+                }
+                return renderShadow(key.getWidth(), key.getHeight(), key.getLevel(), key.getBorderRadius(),
+                        key.getRenderer(), key.getScale(), bounds, key.getQuality());
+        }
+    }
 
-        BufferedImage shadow = new BufferedImage(radius, radius + OFFSET_TOP + OFFSET_BOTTOM, BufferedImage.TYPE_INT_ARGB);
-        if (level != 0) {
-            BufferedImage shadow2 = new BufferedImage(radius, radius + OFFSET_TOP + OFFSET_BOTTOM, BufferedImage.TYPE_INT_ARGB);
-            Graphics2D g = shadow.createGraphics();
-            g.setComposite(AlphaComposite.SrcOver);
-
-            makeCircularShadow(shadow, opacity1.getInterpolatedValueAt(level / 5), radius1.getInterpolatedValueAt(level / 5),
-                    0, offset1.getInterpolatedValueAt(level / 5));
-            makeCircularShadow(shadow2, opacity2.getInterpolatedValueAt(level / 5), radius2.getInterpolatedValueAt(level / 5),
-                    0, offset2.getInterpolatedValueAt(level / 5));
-            g.drawImage(shadow2, 0, 0, null);
+    /**
+     * Records a shadow that is about to be rendered, and reads it from the
+     * atlas if it is there.
+     * @return the shadow, or {@code null} if it isn't in the atlas
+     */
+    private static BufferedImage lookup(ShadowCache.Key key) {
+        ShadowAtlas.record(key);
+        ShadowAtlas atlas = MaterialShadow.atlas;
+        return atlas != null ? atlas.get(key) : null;
+    }
 
-            g.dispose();
+    /**
+     * Creates a black shadow, in the current storage format, from its alpha
+     * values.
+     * @param width  the width of the shadow
+     * @param height the height of the shadow
+     * @param alpha  the alpha values [0~255], row by row; the array is reused
+     * @return a new shadow
+     */
+    static BufferedImage createShadow(int width, int height, int[] alpha) {
+        BufferedImage shadow = createImage(width, height);
+        if (!isAlphaMask(shadow)) {
+            for (int i = 0; i < alpha.length; i++) {
+                alpha[i] <<= 24;
+            }
         }
+        setRows(shadow, 0, height, alpha);
         return shadow;
     }
 
-    private static void makeShadow(BufferedImage shadow, float opacity, float radius, float leftOffset, float topOffset, int borderRadius) {
-        Graphics2D g2 = shadow.createGraphics();
-        g2.setColor(new Color(0, 0, 0, opacity));
-        g2.fill(new RoundRectangle2D.Float(OFFSET_LEFT + leftOffset, OFFSET_TOP + topOffset,
-                shadow.getWidth() - OFFSET_LEFT - OFFSET_RIGHT, shadow.getHeight() - OFFSET_TOP - OFFSET_BOTTOM, borderRadius*2, borderRadius*2));
-        g2.dispose();
-        FastGaussianBlur.blur(shadow, radius);
+    /**
+     * Reads the alpha values of a black shadow.
+     * @param shadow the shadow
+     * @return the alpha values [0~255], row by row
+     */
+    static int[] getAlpha(BufferedImage shadow) {
+        int width = shadow.getWidth();
+        int height = shadow.getHeight();
+        if (isAlphaMask(shadow)) {
+            return shadow.getRaster().getPixels(0, 0, width, height, (int[]) null);
+        }
+        int[] alpha = (int[]) shadow.getRaster().getDataElements(0, 0, width, height, null);
+        for (int i = 0; i < alpha.length; i++) {
+            alpha[i] >>>= 24;
+        }
+        return alpha;
+    }
+
+    /**
+     * Adds the key of the shadow that painting the given spec at the given
+     * (quantized) level looks up, like {@link #paintLevel}.
+     */
+    private static void addPaintKey(Set<ShadowCache.Key> keys, ShadowSpec spec, double level) {
+        double scale = spec.getScale();
+        int width = (int) Math.round(spec.getWidth() * scale);
+        int height = (int) Math.round(spec.getHeight() * scale);
+        if (width <= 0 || height <= 0 || level == 0) {
+            return;
+        }
+        int radius = spec.getBorderRadius();
+        boolean tight = tightBoundsEnabled;
+        Quality quality = getQuality(renderer, spec.getQuality() != null ? spec.getQuality() : defaultQuality);
+        if (spec.getType() == Type.SQUARE && (ninePatchEnabled || hollowEnabled)) {
+            ShadowCache.Key template = getNinePatchKey(getNinePatchInset(level, radius, scale, quality), level, radius,
+                    renderer, scale, tight, quality);
+            if (width >= template.getWidth() && height >= template.getHeight()) {
+                keys.add(template);
+                return;
+            }
+        }
+        keys.add(createKey(width, height, radius, level, spec.getType(), scale, tight, quality));
+    }
+
+    private static ShadowCache.Key createKey(int width, int height, int radius, double level, Type type, double scale,
+                                             boolean tight, Quality quality) {
+        return type == Type.CIRCULAR
+                ? new ShadowCache.Key(width, 0, 0, level, type, renderer, scale, tight, quality)
+                : new ShadowCache.Key(width, height, radius, level, type, renderer, scale, tight, quality);
     }
 
-    private static void makeCircularShadow(BufferedImage shadow, float opacity, float radius, float leftOffset, float topOffset) {
-        Graphics2D g2 = shadow.createGraphics();
-        g2.setColor(new Color(0, 0, 0, opacity));
-        g2.fill(new Ellipse2D.Double(OFFSET_LEFT + leftOffset, OFFSET_TOP + topOffset,
-                shadow.getWidth() - OFFSET_LEFT - OFFSET_RIGHT, shadow.getWidth() - OFFSET_LEFT - OFFSET_RIGHT));
-        g2.dispose();
-        FastGaussianBlur.blur(shadow, radius);
+    /**
+     * Gets the number of device pixels per logical pixel of the screen the
+     * given canvas paints to, if shadows can be painted at device resolution
+     * on it. This is only the case if the canvas isn't transformed beyond the
+     * default transform of its device and a translation.
+     */
+    private static double getDeviceScale(Graphics2D g) {
+        GraphicsConfiguration configuration = g.getDeviceConfiguration();
+        if (configuration == null) {
+            return 1;
+        }
+        AffineTransform device = configuration.getDefaultTransform();
+        AffineTransform transform = g.getTransform();
+        double scale = device.getScaleX();
+        if (scale > 0 && scale != 1 && device.getScaleY() == scale
+                && transform.getScaleX() == scale && transform.getScaleY() == scale
+                && transform.getShearX() == 0 && transform.getShearY() == 0) {
+            return scale;
+        }
+        return 1;
     }
     
+    private final Component owner;
     private int pWd, pHt, pRd;
     private double pLv;
     private Type pTp;
+    private Renderer pRn;
+    private double pSc;
+    private boolean pTb;
+    private Quality pQl;
     private BufferedImage shadowBg;
+    private Rectangle shadowBounds;
+    private int npMinWd, npMinHt, npInset, npRd = -1;
+    private double npLv;
+    private Renderer npRn;
+    private double npSc;
+    private boolean npTb;
+    private Quality npQl;
+    private Rectangle npBounds;
+    private NinePatch ninePatch;
+    private NinePatch placeholderPatch;
+    private BufferedImage placeholderImage;
+    private BufferedImage fadeLower;
+    private BufferedImage fadeUpper;
+    private Color color = Color.BLACK;
+    private Quality quality;
+    private final Map<BufferedImage, BufferedImage> tinted = new WeakHashMap<>();
+    private final Map<ShadowCache.Key, BufferedImage> delivered = new LinkedHashMap<>(8, 0.75f, true);
     
     /**
      * The types of shadow available for rendering.
@@ -193,19 +1362,151 @@ public class MaterialShadow {
          */
         CIRCULAR
     }
+
+    /**
+     * The algorithms available for rendering shadows.
+     */
+    public static enum Renderer {
+        /**
+         * Fills the outline of the component and blurs it with a {@link
+         * FastGaussianBlur}. This is the classic look.
+         */
+        BLUR,
+        /**
+         * Computes shadows directly from the closed form of a blurred
+         * rectangle, or from the radial profile of a blurred disk, without
+         * blurring anything. It looks nearly the same as {@link #BLUR}, but
+         * its cost barely depends on the blur radius.
+         */
+        ANALYTIC
+    }
+
+    /**
+     * The qualities available for blurring shadows. The quality doesn't
+     * apply to the {@link Renderer#ANALYTIC analytic} renderer.
+     */
+    public static enum Quality {
+        /**
+         * Approximates the Gaussian with two box blur passes instead of
+         * three. The edges of the shadow are slightly less smooth, which is
+         * hardly visible while the shadow is animated. Its alpha differs from
+         * a true Gaussian by up to 3 levels [0~255]. For animations and slow
+         * machines.
+         */
+        FAST,
+        /**
+         * Approximates the Gaussian with three box blur passes. This is the
+         * classic look. Its alpha differs from a true Gaussian by up to 2.5
+         * levels [0~255].
+         */
+        STANDARD,
+        /**
+         * Blurs with a true Gaussian, always at full resolution. Its alpha
+         * is off by up to one level [0~255], mostly from rounding. This is
+         * several times slower than the box blur, so it is meant for static
+         * shadows that are rendered once.
+         */
+        PRECISE
+    }
     
     /**
      * Default constructor for a {@code MaterialShadow}. It is recommended to
      * keep a single instance for each component that requires it. The
      * components bundled in this library already handle this by themselves.
      */
-    public MaterialShadow() {}
+    public MaterialShadow() {
+        this(null);
+    }
+
+    /**
+     * Creates a {@code MaterialShadow} cast by the given component. If
+     * {@link #setAsyncRenderingEnabled(boolean) asynchronous rendering} is
+     * enabled, shadows that are not rendered yet are rendered in the
+     * background, and the component is repainted once they are ready.
+     * @param owner the component casting the shadow, or {@code null}
+     */
+    public MaterialShadow(Component owner) {
+        this.owner = owner;
+    }
+
+    /**
+     * Gets the color of this shadow.
+     * @return the color of this shadow
+     */
+    public Color getColor() {
+        return color;
+    }
+
+    /**
+     * Sets the color of this shadow. The alpha of the color is applied on top
+     * of the alpha of the shadow. Colored shadows are derived from the black
+     * ones in the shared cache without blurring them again, and if {@link
+     * #setCompactStorageEnabled(boolean) compact storage} is enabled, even
+     * without copying them. The default color is black.
+     * @param color the new color of this shadow
+     */
+    public void setColor(Color color) {
+        if (color == null) {
+            throw new IllegalArgumentException("Color must not be null");
+        }
+        this.color = color;
+        tinted.clear();
+        ninePatch = null;
+    }
+
+    /**
+     * Gets the quality of the blur of this shadow.
+     * @return the quality of this shadow, or {@code null} if it has the
+     *         {@link #getDefaultQuality() default quality}
+     */
+    public Quality getQuality() {
+        return quality;
+    }
+
+    /**
+     * Sets the quality of the blur of this shadow, e.g. {@link Quality#FAST}
+     * while it is animated and {@link Quality#PRECISE} once it is static.
+     * @param quality the new quality of this shadow, or {@code null} to use
+     *                the {@link #setDefaultQuality(Quality) default quality}
+     */
+    public void setQuality(Quality quality) {
+        this.quality = quality;
+    }
+
+    /**
+     * Gets the quality this shadow is currently rendered with.
+     */
+    private Quality getEffectiveQuality() {
+        Quality quality = this.quality;
+        return quality != null ? quality : defaultQuality;
+    }
+
+    /**
+     * Gets the given black shadow in the color of this shadow. Colored
+     * shadows are kept as long as the black ones are.
+     */
+    private BufferedImage tinted(BufferedImage shadow) {
+        if (color.getRGB() == 0xff000000) {
+            return shadow;
+        }
+        BufferedImage image = tinted.get(shadow);
+        if (image == null) {
+            image = tint(shadow, color);
+            tinted.put(shadow, image);
+        }
+        return image;
+    }
     
     /**
      * Renders this {@link MaterialShadow} into a {@link BufferedImage} and
-     * returns it. A copy of the latest render is kept in case a shadow of the
-     * same dimensions and elevation is needed in order to decrease CPU usage
-     * when the component is idle.
+     * returns it. Rendered shadows are kept in the {@link ShadowCache#getShared()
+     * shared cache}, so components of the same dimensions and elevation share
+     * a single image. A reference to the latest render is also kept in case a
+     * shadow of the same dimensions and elevation is needed in order to
+     * decrease CPU usage when the component is idle.
+     * <p/>
+     * The returned image may be shared with other components and must not be
+     * modified. It has the {@link #setColor(Color) color} of this shadow.
      * @param width  the witdh of the square component casting a shadow, or
      *               diameter if it is circular.
      * @param height the height of the square component casting a shadow.
@@ -218,21 +1519,551 @@ public class MaterialShadow {
      * @see Type#CIRCULAR
      */
     public BufferedImage render(int width, int height, int radius, double level, Type type) {
-        if (pWd != width || pHt != height || pRd != radius || pLv != level || pTp != type) {
-            switch (type) {
-                case SQUARE:
-                    shadowBg = MaterialShadow.renderShadow(width, height, level, radius);
-                    break;
-                case CIRCULAR:
-                    shadowBg = MaterialShadow.renderCircularShadow(width, level);
-                    break;
+        Quality quality = getQuality(renderer, getEffectiveQuality());
+        return tinted(getImage(width, height, radius, level, type, 1, false, quality, false, false));
+    }
+
+    /**
+     * Gets the shadow of the given size from the latest render, the shared
+     * cache, or by rendering it. The area of the component it spans is kept
+     * in {@link #shadowBounds}.
+     * @return the shadow, or {@code null} if it is being rendered in the
+     *         background or was deferred
+     */
+    private BufferedImage getImage(int width, int height, int radius, double level, Type type, double scale,
+                                   boolean tight, Quality quality, boolean async, boolean painting) {
+        if (shadowBg == null || pWd != width || pHt != height || pRd != radius || pLv != level || pTp != type
+                || pRn != renderer || pSc != scale || pTb != tight || pQl != quality) {
+            ShadowCache.Key key = createKey(width, height, radius, level, type, scale, tight, quality);
+            BufferedImage image = getShadow(key, async, painting);
+            if (image == null) {
+                return null;
             }
+            shadowBg = image;
+            shadowBounds = getBounds(key);
             pWd = width;
             pHt = height;
             pRd = radius;
             pLv = level;
             pTp = type;
+            pRn = renderer;
+            pSc = scale;
+            pTb = tight;
+            pQl = quality;
         }
         return shadowBg;
     }
+
+    /**
+     * Gets a shadow from the shared cache or the shadows handed to this
+     * instance, rendering and caching it if needed. While painting, rendering
+     * is subject to the frame budget.
+     * @return the shadow, or {@code null} if it is being rendered in the
+     *         background or was deferred
+     */
+    private BufferedImage getShadow(ShadowCache.Key key, boolean async, boolean painting) {
+        ShadowCache cache = ShadowCache.getShared();
+        BufferedImage image = cache.get(key);
+        if (image == null) {
+            image = getDelivered(key);
+        }
+        if (image == null) {
+            if (async) {
+                ShadowRenderService.submit(key, this);
+                return null;
+            } else if (painting && owner != null) {
+                return ShadowScheduler.render(key, this);
+            }
+            image = render(key);
+            cache.put(key, image);
+        }
+        return image;
+    }
+
+    /**
+     * Hands a shadow that was rendered in the background or in a later frame
+     * to this instance and repaints the component casting it. The shadow is kept here, so that
+     * the repaint finds it even if the shared cache couldn't keep it, which
+     * would otherwise start the next render.
+     * @param key   the key of the shadow
+     * @param image the rendered shadow
+     */
+    void deliver(ShadowCache.Key key, BufferedImage image) {
+        synchronized (delivered) {
+            delivered.put(key, image);
+            Iterator<BufferedImage> eldest = delivered.values().iterator();
+            while (delivered.size() > MAX_DELIVERED) {
+                eldest.next();
+                eldest.remove();
+            }
+        }
+        if (owner != null) {
+            owner.repaint();
+        }
+    }
+
+    /**
+     * Gets the component casting this shadow.
+     * @return the component, or {@code null} if this shadow has no owner
+     */
+    Component getOwner() {
+        return owner;
+    }
+
+    private BufferedImage getDelivered(ShadowCache.Key key) {
+        synchronized (delivered) {
+            return delivered.get(key);
+        }
+    }
+
+    /**
+     * Paints this {@link MaterialShadow} at the origin of the given canvas.
+     * This is equivalent to painting the image returned by {@link
+     * #render(int, int, int, double, Type)}, but large square shadows are
+     * painted as a stretched {@link NinePatch} without rendering an image of
+     * the full size. Levels between two steps of the level quantization are
+     * painted as a linear blend of the shadows of both steps.
+     * @param g      canvas
+     * @param width  the witdh of the square component casting a shadow, or
+     *               diameter if it is circular.
+     * @param height the height of the square component casting a shadow.
+     * @param radius the radius of the borders of a square component casting a
+     *               shadow.
+     * @param level  the depth of the shadow [0~5]
+     * @param type   the type of projected shadow, either square or circular
+     * <p/>
+     * On screens that scale the user interface, shadows are rendered and
+     * painted at the resolution of the screen instead of being scaled up. If
+     * tight bounds are enabled, only the area the shadow covers is painted.
+     * Only the part of the shadow within the clip of the canvas is copied.
+     * @see #setNinePatchEnabled(boolean)
+     * @see #setLevelQuantization(double)
+     * @see #setTightBoundsEnabled(boolean)
+     */
+    public void paint(Graphics g, int width, int height, int radius, double level, Type type) {
+        Graphics2D g2 = (Graphics2D) g;
+        double scale = getDeviceScale(g2);
+        if (scale == 1) {
+            paintQuantized(g, null, width, height, radius, level, type, 1);
+            return;
+        }
+        AffineTransform transform = g2.getTransform();
+        g2.setTransform(AffineTransform.getTranslateInstance(Math.round(transform.getTranslateX()),
+                Math.round(transform.getTranslateY())));
+        try {
+            paintQuantized(g, null, (int) Math.round(width * scale), (int) Math.round(height * scale), radius, level, type,
+                    scale);
+        } finally {
+            g2.setTransform(transform);
+        }
+    }
+
+    /**
+     * Renders the shadow cast by a component of an arbitrary outline. The
+     * shadow is blurred, whatever the {@link #setRenderer(Renderer) renderer}
+     * is. The outline is normalized to its bounds, so components with
+     * identical outlines share a single image in the {@link
+     * ShadowCache#getShared() shared cache}, wherever they are.
+     * <p/>
+     * The top left corner of the image is at the top left corner of the
+     * bounds of the outline, rounded down, minus {@link #OFFSET_LEFT} and
+     * {@link #OFFSET_TOP}. The returned image may be shared with other
+     * components and must not be modified. It has the {@link
+     * #setColor(Color) color} of this shadow.
+     * @param outline the outline of the component casting the shadow
+     * @param level   the depth of the shadow [0~5]
+     * @return A {@link BufferedImage} with the contents of the shadow, or
+     *         {@code null} if the outline is empty.
+     */
+    public BufferedImage render(Shape outline, double level) {
+        ShadowCache.Key key = createOutlineKey(outline, level, 1, false, getEffectiveQuality());
+        return key != null ? tinted(getShadow(key, false, false)) : null;
+    }
+
+    /**
+     * Paints the shadow cast by a component of an arbitrary outline. This is
+     * equivalent to painting the image returned by {@link #render(Shape,
+     * double)}, and follows the same settings as {@link #paint(Graphics, int,
+     * int, int, double, Type)}, except that shadows of outlines are never
+     * hollow.
+     * @param g       canvas
+     * @param outline the outline of the component casting the shadow
+     * @param level   the depth of the shadow [0~5]
+     */
+    public void paint(Graphics g, Shape outline, double level) {
+        Graphics2D g2 = (Graphics2D) g;
+        double scale = getDeviceScale(g2);
+        if (scale == 1) {
+            paintQuantized(g, outline, 0, 0, 0, level, null, 1);
+            return;
+        }
+        AffineTransform transform = g2.getTransform();
+        g2.setTransform(AffineTransform.getTranslateInstance(Math.round(transform.getTranslateX()),
+                Math.round(transform.getTranslateY())));
+        try {
+            paintQuantized(g, AffineTransform.getScaleInstance(scale, scale).createTransformedShape(outline), 0, 0, 0,
+                    level, null, scale);
+        } finally {
+            g2.setTransform(transform);
+        }
+    }
+
+    /**
+     * Paints a shadow, crossfading between the two nearest quantized levels if
+     * needed. The outline, width and height are given in device pixels. If an
+     * outline is given, the shadow is cast by it instead of the component of
+     * the given size and type.
+     */
+    private void paintQuantized(Graphics g, Shape outline, int width, int height, int radius, double level, Type type,
+                                double scale) {
+        double[] levels = quantize(level);
+        if (levels.length == 2) {
+            double fraction = (level - levels[0]) / (levels[1] - levels[0]);
+            paintCrossfade(g, outline, width, height, radius, levels[0], levels[1], fraction, type, scale);
+            return;
+        }
+        fadeLower = null;
+        fadeUpper = null;
+        paintLevel(g, outline, width, height, radius, levels[0], type, scale);
+    }
+
+    /**
+     * Maps a level to the quantized levels that painting it uses. A level
+     * close to a step is rounded to it, other levels below the highest step
+     * are blended from the steps around them, and levels above it are painted
+     * as they are.
+     * @param level the elevation level [0~5]
+     * @return the level to paint, or the lower and the upper level to blend
+     */
+    private static double[] quantize(double level) {
+        double step = levelQuantization;
+        if (step > 0) {
+            double lower = Math.floor(level / step) * step;
+            double upper = lower + step;
+            double fraction = (level - lower) / step;
+            if (fraction <= 0.001) {
+                return new double[]{lower};
+            } else if (upper <= 5 && fraction >= 0.999) {
+                return new double[]{upper};
+            } else if (upper <= 5) {
+                return new double[]{lower, upper};
+            }
+        }
+        return new double[]{level};
+    }
+
+    /**
+     * Paints a shadow at a level between two quantized levels as a linear
+     * blend of the shadows at both levels. This is much cheaper than blurring
+     * the shadow at the level in between. Painting both shadows translucently
+     * over each other instead would be lighter than the blend where they
+     * overlap. Square shadows that fit a nine-patch at both levels are
+     * blended at the minimum size of the larger nine-patch and stretched,
+     * which is identical, as both shadows are uniform along the stretched
+     * rows and columns. Other shadows are blended within the clip.
+     */
+    private void paintCrossfade(Graphics g, Shape outline, int width, int height, int radius, double lower,
+                                double upper, double fraction, Type type, double scale) {
+        if (outline == null && type == Type.SQUARE && (ninePatchEnabled || hollowEnabled)) {
+            Quality quality = getQuality(renderer, getEffectiveQuality());
+            int inset = Math.max(getNinePatchInset(lower, radius, scale, quality),
+                    getNinePatchInset(upper, radius, scale, quality));
+            int minWidth = scale(OFFSET_LEFT, scale) + scale(OFFSET_RIGHT, scale) + 2 * inset + 1;
+            int minHeight = scale(OFFSET_TOP, scale) + scale(OFFSET_BOTTOM, scale) + 2 * inset + 1;
+            if (width >= minWidth && height >= minHeight) {
+                Rectangle area = getPaintBounds(null, minWidth, minHeight, lower, type, scale, upper);
+                blendLevels(area, g, null, minWidth, minHeight, radius, lower, upper, fraction, type, scale);
+                NinePatch patch = createNinePatch(fadeLower.getSubimage(0, 0, area.width, area.height), inset, area,
+                        scale);
+                Rectangle hole = hollowEnabled ? getHole(width, height, radius, type, scale) : null;
+                if (hole != null) {
+                    patch.paint(g, area.x, area.y, width - minWidth + area.width, height - minHeight + area.height,
+                            hole);
+                } else {
+                    patch.paint(g, area.x, area.y, width - minWidth + area.width, height - minHeight + area.height);
+                }
+                return;
+            }
+        }
+        Rectangle area = getPaintBounds(outline, width, height, lower, type, scale, upper);
+        Rectangle clip = g.getClipBounds();
+        if (area != null && clip != null) {
+            area = area.intersection(clip);
+        }
+        if (area == null || area.isEmpty()) {
+            return;
+        }
+        blendLevels(area, g, outline, width, height, radius, lower, upper, fraction, type, scale);
+        g.drawImage(fadeLower, area.x, area.y, area.x + area.width, area.y + area.height,
+                0, 0, area.width, area.height, null);
+    }
+
+    /**
+     * Paints the given area of the shadows at two levels into scratch images
+     * and blends them linearly into the top left corner of {@link
+     * #fadeLower}.
+     */
+    private void blendLevels(Rectangle area, Graphics g, Shape outline, int width, int height, int radius,
+                             double lower, double upper, double fraction, Type type, double scale) {
+        fadeLower = paintLevel(fadeLower, area, g, outline, width, height, radius, lower, type, scale);
+        fadeUpper = paintLevel(fadeUpper, area, g, outline, width, height, radius, upper, type, scale);
+        int size = area.width * area.height;
+        int[] blend = FastGaussianBlur.getAlphaPlane(0, size);
+        int[] other = FastGaussianBlur.getAlphaPlane(1, size);
+        fadeLower.getRaster().getDataElements(0, 0, area.width, area.height, blend);
+        fadeUpper.getRaster().getDataElements(0, 0, area.width, area.height, other);
+        int t = (int) Math.round(fraction * 256);
+        for (int i = 0; i < size; i++) {
+            int p = blend[i];
+            int q = other[i];
+            if (p != q) {
+                int rb = ((p & 0xff00ff) * (256 - t) + (q & 0xff00ff) * t + 0x800080) >>> 8 & 0xff00ff;
+                int ag = ((p >>> 8 & 0xff00ff) * (256 - t) + (q >>> 8 & 0xff00ff) * t + 0x800080) & 0xff00ff00;
+                blend[i] = ag | rb;
+            }
+        }
+        fadeLower.getRaster().setDataElements(0, 0, area.width, area.height, blend);
+    }
+
+    /**
+     * Paints a shadow into the top left corner of a scratch image, which is
+     * replaced if it is too small, as if the corner was at the given area of
+     * the canvas.
+     * @return the scratch image
+     */
+    private BufferedImage paintLevel(BufferedImage scratch, Rectangle area, Graphics canvas, Shape outline, int width,
+                                     int height, int radius, double level, Type type, double scale) {
+        if (scratch == null || scratch.getWidth() < area.width || scratch.getHeight() < area.height) {
+            scratch = new BufferedImage(Math.max(area.width, scratch != null ? scratch.getWidth() : 0),
+                    Math.max(area.height, scratch != null ? scratch.getHeight() : 0), BufferedImage.TYPE_INT_ARGB_PRE);
+        }
+        Graphics2D g = scratch.createGraphics();
+        g.setRenderingHints(((Graphics2D) canvas).getRenderingHints());
+        g.setComposite(AlphaComposite.Clear);
+        g.fillRect(0, 0, area.width, area.height);
+        g.setComposite(AlphaComposite.SrcOver);
+        g.clipRect(0, 0, area.width, area.height);
+        g.translate(-area.x, -area.y);
+        paintLevel(g, outline, width, height, radius, level, type, scale);
+        g.dispose();
+        return scratch;
+    }
+
+    /**
+     * Gets the area that painting a shadow at either of two levels covers, in
+     * device pixels.
+     * @return the area, or {@code null} if nothing is painted
+     */
+    private Rectangle getPaintBounds(Shape outline, int width, int height, double lower, Type type, double scale,
+                                     double upper) {
+        Rectangle area = getPaintBounds(outline, width, height, lower, type, scale);
+        Rectangle upperArea = getPaintBounds(outline, width, height, upper, type, scale);
+        return area == null ? upperArea : upperArea == null ? area : area.union(upperArea);
+    }
+
+    /**
+     * Gets the area that painting a shadow at the given level covers, in
+     * device pixels.
+     * @return the area, or {@code null} if nothing is painted
+     */
+    private Rectangle getPaintBounds(Shape outline, int width, int height, double level, Type type, double scale) {
+        if (level == 0) {
+            return null;
+        }
+        if (outline != null) {
+            ShadowCache.Key key = createOutlineKey(outline, level, scale, tightBoundsEnabled, getEffectiveQuality());
+            if (key == null) {
+                return null;
+            }
+            Point origin = getOutlineOrigin(outline, scale);
+            Rectangle bounds = getBounds(key);
+            bounds.translate(origin.x, origin.y);
+            return bounds;
+        }
+        if (width <= 0 || height <= 0) {
+            return null;
+        }
+        int imageHeight = type == Type.CIRCULAR ? getCircularHeight(width, scale) : height;
+        return tightBoundsEnabled
+                ? getShadowBounds(width, imageHeight, level, type, renderer, scale,
+                        getQuality(renderer, getEffectiveQuality()))
+                : new Rectangle(0, 0, width, imageHeight);
+    }
+
+    private void paintLevel(Graphics g, Shape outline, int width, int height, int radius, double level, Type type,
+                            double scale) {
+        if (outline != null) {
+            paintOutline(g, outline, level, scale);
+            return;
+        }
+        if (width <= 0 || height <= 0 || level == 0) {
+            return;
+        }
+        boolean async = asyncRenderingEnabled && owner != null;
+        boolean tight = tightBoundsEnabled;
+        Quality quality = getQuality(renderer, getEffectiveQuality());
+        Rectangle hole = hollowEnabled ? getHole(width, height, radius, type, scale) : null;
+        if (type == Type.SQUARE && fitsNinePatch(width, height, radius, level, scale, tight, quality)) {
+            if (ninePatch == null) {
+                BufferedImage template = getShadow(getNinePatchKey(npInset, level, radius, npRn, scale, tight, quality),
+                        async, true);
+                if (template != null) {
+                    ninePatch = createNinePatch(tinted(template), npInset, npBounds, scale);
+                }
+            }
+            if (ninePatch != null && hole != null) {
+                ninePatch.paint(g, npBounds.x, npBounds.y, width - npMinWd + npBounds.width,
+                        height - npMinHt + npBounds.height, hole);
+            } else if (ninePatch != null) {
+                ninePatch.paint(g, npBounds.x, npBounds.y, width - npMinWd + npBounds.width,
+                        height - npMinHt + npBounds.height);
+            }
+            if (ninePatch != null) {
+                placeholderPatch = ninePatch;
+                placeholderImage = null;
+                return;
+            }
+        } else {
+            BufferedImage image = getImage(width, height, radius, level, type, scale, tight, quality, async, true);
+            if (image != null) {
+                image = tinted(image);
+                drawClipped(g, image, shadowBounds.x, shadowBounds.y, hole);
+                placeholderImage = image;
+                placeholderPatch = null;
+                return;
+            }
+        }
+        paintPlaceholder(g, tight
+                ? getShadowBounds(width, type == Type.CIRCULAR ? getCircularHeight(width, scale) : height, level, type,
+                        renderer, scale, quality)
+                : new Rectangle(0, 0, width, height));
+    }
+
+    private void paintOutline(Graphics g, Shape outline, double level, double scale) {
+        if (level == 0) {
+            return;
+        }
+        boolean tight = tightBoundsEnabled;
+        ShadowCache.Key key = createOutlineKey(outline, level, scale, tight, getEffectiveQuality());
+        if (key == null) {
+            return;
+        }
+        Point origin = getOutlineOrigin(outline, scale);
+        Rectangle bounds = getBounds(key);
+        bounds.translate(origin.x, origin.y);
+        BufferedImage image = getShadow(key, asyncRenderingEnabled && owner != null, true);
+        if (image != null) {
+            image = tinted(image);
+            drawClipped(g, image, bounds.x, bounds.y, null);
+            placeholderImage = image;
+            placeholderPatch = null;
+        } else {
+            paintPlaceholder(g, bounds);
+        }
+    }
+
+    /**
+     * Paints an image at the given position, copying only the part within the
+     * clip of the canvas. Small repaints, like a blinking caret, then don't
+     * blit the whole shadow of the component behind them. If a hole is given,
+     * only the four bands around it are copied.
+     */
+    private static void drawClipped(Graphics g, BufferedImage image, int x, int y, Rectangle hole) {
+        Rectangle area = new Rectangle(x, y, image.getWidth(), image.getHeight());
+        Rectangle clip = g.getClipBounds();
+        if (clip != null) {
+            area = area.intersection(clip);
+        }
+        if (hole == null || !hole.intersects(area)) {
+            drawArea(g, image, x, y, area);
+            return;
+        }
+        int holeBottom = hole.y + hole.height;
+        int holeRight = hole.x + hole.width;
+        drawArea(g, image, x, y, area.intersection(new Rectangle(area.x, area.y, area.width, hole.y - area.y)));
+        drawArea(g, image, x, y, area.intersection(new Rectangle(area.x, holeBottom, area.width,
+                area.y + area.height - holeBottom)));
+        drawArea(g, image, x, y, area.intersection(new Rectangle(area.x, hole.y, hole.x - area.x, hole.height)));
+        drawArea(g, image, x, y, area.intersection(new Rectangle(holeRight, hole.y, area.x + area.width - holeRight,
+                hole.height)));
+    }
+
+    /**
+     * Copies the given area of an image painted at the given position.
+     */
+    private static void drawArea(Graphics g, BufferedImage image, int x, int y, Rectangle area) {
+        if (!area.isEmpty()) {
+            g.drawImage(image, area.x, area.y, area.x + area.width, area.y + area.height,
+                    area.x - x, area.y - y, area.x - x + area.width, area.y - y + area.height, null);
+        }
+    }
+
+    /**
+     * Gets the area of a shadow that is covered by the opaque component
+     * casting it, in device pixels. Its rounded corners and the pixels along
+     * its outline are left out.
+     * @return the covered area, or {@code null} if there is none
+     */
+    private static Rectangle getHole(int width, int height, int radius, Type type, double scale) {
+        double left = OFFSET_LEFT * scale;
+        double top = OFFSET_TOP * scale;
+        double right = width - OFFSET_RIGHT * scale;
+        double bottom;
+        double inset;
+        if (type == Type.CIRCULAR) {
+            // the square inscribed in the circle
+            inset = (right - left) / 2 * (1 - Math.sqrt(0.5)) + 1;
+            bottom = top + right - left;
+        } else {
+            inset = radius * scale + 1;
+            bottom = height - OFFSET_BOTTOM * scale;
+        }
+        int x0 = (int) Math.ceil(left + inset);
+        int y0 = (int) Math.ceil(top + inset);
+        int x1 = (int) Math.floor(right - inset);
+        int y1 = (int) Math.floor(bottom - inset);
+        return x0 < x1 && y0 < y1 ? new Rectangle(x0, y0, x1 - x0, y1 - y0) : null;
+    }
+
+    /**
+     * Paints the latest shadow painted by this instance, stretched to the
+     * given area, while the actual shadow is rendered in the background.
+     */
+    private void paintPlaceholder(Graphics g, Rectangle bounds) {
+        if (placeholderPatch != null && bounds.width >= placeholderPatch.getMinimumWidth()
+                && bounds.height >= placeholderPatch.getMinimumHeight()) {
+            placeholderPatch.paint(g, bounds.x, bounds.y, bounds.width, bounds.height);
+        } else if (placeholderPatch != null) {
+            g.drawImage(placeholderPatch.getImage(), bounds.x, bounds.y, bounds.width, bounds.height, null);
+        } else if (placeholderImage != null) {
+            g.drawImage(placeholderImage, bounds.x, bounds.y, bounds.width, bounds.height, null);
+        }
+    }
+
+    /**
+     * Checks if a square shadow of the given size is painted as a nine-patch,
+     * which hollow shadows always are if possible.
+     */
+    private boolean fitsNinePatch(int width, int height, int radius, double level, double scale, boolean tight,
+                                  Quality quality) {
+        if (!ninePatchEnabled && !hollowEnabled) {
+            return false;
+        }
+        if (npRd != radius || npLv != level || npRn != renderer || npSc != scale || npTb != tight
+                || npQl != quality) {
+            npInset = getNinePatchInset(level, radius, scale, quality);
+            ShadowCache.Key template = getNinePatchKey(npInset, level, radius, renderer, scale, tight, quality);
+            npMinWd = template.getWidth();
+            npMinHt = template.getHeight();
+            npBounds = getBounds(template);
+            npRd = radius;
+            npLv = level;
+            npRn = renderer;
+            npSc = scale;
+            npTb = tight;
+            npQl = quality;
+            ninePatch = null;
+        }
+        return width >= npMinWd && height >= npMinHt;
+    }
 }
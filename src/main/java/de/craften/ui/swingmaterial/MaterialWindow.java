@@ -409,7 +409,7 @@ public class MaterialWindow extends JFrame {
         private boolean deployed;
 
         ShadowPane() {
-            shadow = new MaterialShadow();
+            shadow = new MaterialShadow(this);
             setLayout(new BorderLayout());
             setOpaque(false);
             setDeployed(true);
@@ -446,11 +446,16 @@ public class MaterialWindow extends JFrame {
         protected void paintComponent(Graphics g) {
             if (isDeployed()) {
                 Graphics2D g2d = (Graphics2D) g;
-                g.clearRect(0, 0, getWidth(), getHeight());
+                Rectangle clip = g.getClipBounds();
+                if (clip != null) {
+                    g.clearRect(clip.x, clip.y, clip.width, clip.height);
+                } else {
+                    g.clearRect(0, 0, getWidth(), getHeight());
+                }
                 g2d.setComposite(AlphaComposite.SrcOver);
-                g2d.drawImage(shadow.render(getWidth(), getHeight(), 1, 2, MaterialShadow.Type.SQUARE), 0, 0, null);
+                shadow.paint(g2d, getWidth(), getHeight(), 1, 2, MaterialShadow.Type.SQUARE);
 
-                g.setClip(new RoundRectangle2D.Float(MaterialShadow.OFFSET_LEFT, MaterialShadow.OFFSET_TOP,
+                g2d.clip(new RoundRectangle2D.Float(MaterialShadow.OFFSET_LEFT, MaterialShadow.OFFSET_TOP,
                         getWidth() - MaterialShadow.OFFSET_LEFT - MaterialShadow.OFFSET_RIGHT,
                         getHeight() - MaterialShadow.OFFSET_TOP - MaterialShadow.OFFSET_BOTTOM, 3, 3));
                 super.paintComponent(g);
@@ -0,0 +1,255 @@
+package de.craften.ui.swingmaterial;
+
+import java.awt.image.BufferedImage;
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.*;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * A file of pre-rendered shadows. Applications tend to render the same few
+ * shadows on every launch, so the shadows rendered in one session can be
+ * {@link Recorder recorded} and {@link #write(File, Collection) written} to an
+ * atlas, which is {@link #load(File) memory-mapped} and {@link
+ * MaterialShadow#setAtlas(ShadowAtlas) used} in later sessions to read those
+ * shadows instead of rendering them.
+ * <p/>
+ * An atlas stores the alpha of each shadow with one byte per pixel, indexed
+ * by its {@link ShadowCache.Key}. Shadows are only read from an atlas that was
+ * written with the same downsampling threshold. Shadows of arbitrary
+ * {@link MaterialShadow#render(java.awt.Shape, double) outlines} are not
+ * stored in atlases.
+ */
+public final class ShadowAtlas {
+    private static final int MAGIC = 0x4d534154;
+    private static final int VERSION = 2;
+    private static final int HEADER_SIZE = 16;
+    private static final int ENTRY_SIZE = 48;
+
+    private static final List<Recorder> recorders = new CopyOnWriteArrayList<>();
+
+    private final ByteBuffer data;
+    private final float downsamplingThreshold;
+    private final Map<ShadowCache.Key, Entry> entries;
+
+    private ShadowAtlas(ByteBuffer data, float downsamplingThreshold, Map<ShadowCache.Key, Entry> entries) {
+        this.data = data;
+        this.downsamplingThreshold = downsamplingThreshold;
+        this.entries = entries;
+    }
+
+    /**
+     * Maps an atlas file into memory. Shadows are only read from the file
+     * when they are needed.
+     * @param file the atlas file
+     * @return the atlas
+     * @throws IOException if the file can't be read or is not an atlas
+     */
+    public static ShadowAtlas load(File file) throws IOException {
+        MappedByteBuffer data;
+        try (RandomAccessFile input = new RandomAccessFile(file, "r")) {
+            FileChannel channel = input.getChannel();
+            data = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+        if (data.remaining() < HEADER_SIZE || data.getInt() != MAGIC) {
+            throw new IOException("Not a shadow atlas: " + file);
+        }
+        if (data.getInt() != VERSION) {
+            throw new IOException("Unsupported shadow atlas version: " + file);
+        }
+        float downsamplingThreshold = data.getFloat();
+        int count = data.getInt();
+        if (count < 0 || (long) count * ENTRY_SIZE > data.remaining()) {
+            throw new IOException("Corrupt shadow atlas: " + file);
+        }
+        MaterialShadow.Type[] types = MaterialShadow.Type.values();
+        MaterialShadow.Renderer[] renderers = MaterialShadow.Renderer.values();
+        MaterialShadow.Quality[] qualities = MaterialShadow.Quality.values();
+        Map<ShadowCache.Key, Entry> entries = new HashMap<>();
+        for (int i = 0; i < count; i++) {
+            int width = data.getInt();
+            int height = data.getInt();
+            int borderRadius = data.getInt();
+            double level = data.getDouble();
+            int type = data.get();
+            int renderer = data.get();
+            double scale = data.getDouble();
+            boolean tight = data.get() != 0;
+            int quality = data.get();
+            Entry entry = new Entry(data.getInt(), data.getInt(), data.getLong());
+            if (type < 0 || type >= types.length || renderer < 0 || renderer >= renderers.length
+                    || quality < 0 || quality >= qualities.length
+                    || entry.width <= 0 || entry.height <= 0 || entry.offset < 0
+                    || entry.offset + (long) entry.width * entry.height > data.capacity()) {
+                throw new IOException("Corrupt shadow atlas: " + file);
+            }
+            entries.put(new ShadowCache.Key(width, height, borderRadius, level, types[type], renderers[renderer], scale,
+                    tight, qualities[quality]), entry);
+        }
+        return new ShadowAtlas(data, downsamplingThreshold, Collections.unmodifiableMap(entries));
+    }
+
+    /**
+     * Writes the given shadows to an atlas file. Shadows that are not cached
+     * are rendered first. Shadows of arbitrary outlines are skipped.
+     * @param file the atlas file, which is overwritten if it exists
+     * @param keys the keys of the shadows
+     * @throws IOException if the file can't be written
+     */
+    public static void write(File file, Collection<ShadowCache.Key> keys) throws IOException {
+        Set<ShadowCache.Key> unique = new LinkedHashSet<>(keys);
+        List<ShadowCache.Key> written = new ArrayList<>(unique.size());
+        for (ShadowCache.Key key : unique) {
+            if (key.getOutline() == null) {
+                written.add(key);
+            }
+        }
+        List<BufferedImage> images = new ArrayList<>(written.size());
+        ShadowCache cache = ShadowCache.getShared();
+        for (ShadowCache.Key key : written) {
+            BufferedImage image = cache.get(key);
+            images.add(image != null ? image : MaterialShadow.render(key));
+        }
+
+        try (DataOutputStream output = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)))) {
+            output.writeInt(MAGIC);
+            output.writeInt(VERSION);
+            output.writeFloat(MaterialShadow.getDownsamplingThreshold());
+            output.writeInt(written.size());
+            long offset = HEADER_SIZE + (long) written.size() * ENTRY_SIZE;
+            for (int i = 0; i < written.size(); i++) {
+                ShadowCache.Key key = written.get(i);
+                BufferedImage image = images.get(i);
+                output.writeInt(key.getWidth());
+                output.writeInt(key.getHeight());
+                output.writeInt(key.getBorderRadius());
+                output.writeDouble(key.getLevel());
+                output.writeByte(key.getType().ordinal());
+                output.writeByte(key.getRenderer().ordinal());
+                output.writeDouble(key.getScale());
+                output.writeBoolean(key.isTight());
+                output.writeByte(key.getQuality().ordinal());
+                output.writeInt(image.getWidth());
+                output.writeInt(image.getHeight());
+                output.writeLong(offset);
+                offset += (long) image.getWidth() * image.getHeight();
+            }
+            for (BufferedImage image : images) {
+                int[] alpha = MaterialShadow.getAlpha(image);
+                byte[] bytes = new byte[alpha.length];
+                for (int i = 0; i < alpha.length; i++) {
+                    bytes[i] = (byte) alpha[i];
+                }
+                output.write(bytes);
+            }
+        }
+    }
+
+    /**
+     * Starts recording the shadows that are rendered, until the returned
+     * recorder is stopped.
+     * @return a new recorder
+     */
+    public static Recorder startRecording() {
+        Recorder recorder = new Recorder();
+        recorders.add(recorder);
+        return recorder;
+    }
+
+    /**
+     * Passes a shadow that is about to be rendered to all recorders.
+     */
+    static void record(ShadowCache.Key key) {
+        if (key.getOutline() != null) {
+            return;
+        }
+        for (Recorder recorder : recorders) {
+            recorder.add(key);
+        }
+    }
+
+    /**
+     * Reads a shadow from this atlas.
+     * @param key the key of the shadow
+     * @return a new image of the shadow, or {@code null} if it is not in this
+     *         atlas, or was rendered with a different downsampling threshold
+     */
+    public BufferedImage get(ShadowCache.Key key) {
+        Entry entry = entries.get(key);
+        if (entry == null || Float.compare(downsamplingThreshold, MaterialShadow.getDownsamplingThreshold()) != 0) {
+            return null;
+        }
+        byte[] bytes = new byte[entry.width * entry.height];
+        ByteBuffer buffer = data.duplicate();
+        buffer.position((int) entry.offset);
+        buffer.get(bytes);
+        int[] alpha = new int[bytes.length];
+        for (int i = 0; i < bytes.length; i++) {
+            alpha[i] = bytes[i] & 0xff;
+        }
+        return MaterialShadow.createShadow(entry.width, entry.height, alpha);
+    }
+
+    /**
+     * Gets the keys of all shadows in this atlas.
+     * @return the keys of the shadows
+     */
+    public Set<ShadowCache.Key> getKeys() {
+        return entries.keySet();
+    }
+
+    /**
+     * Records the keys of the shadows that are rendered while it is running.
+     */
+    public static final class Recorder {
+        private final Set<ShadowCache.Key> keys = new LinkedHashSet<>();
+
+        private Recorder() {
+        }
+
+        private synchronized void add(ShadowCache.Key key) {
+            keys.add(key);
+        }
+
+        /**
+         * Stops recording. Shadows that are rendered afterwards aren't
+         * recorded anymore.
+         */
+        public void stop() {
+            recorders.remove(this);
+        }
+
+        /**
+         * Gets the keys of the shadows recorded so far, in the order they
+         * were first rendered.
+         * @return the recorded keys
+         */
+        public synchronized List<ShadowCache.Key> getKeys() {
+            return new ArrayList<>(keys);
+        }
+
+        /**
+         * Writes the shadows recorded so far to an atlas file.
+         * @param file the atlas file, which is overwritten if it exists
+         * @throws IOException if the file can't be written
+         * @see ShadowAtlas#write(File, Collection)
+         */
+        public void write(File file) throws IOException {
+            ShadowAtlas.write(file, getKeys());
+        }
+    }
+
+    private static final class Entry {
+        final int width;
+        final int height;
+        final long offset;
+
+        Entry(int width, int height, long offset) {
+            this.width = width;
+            this.height = height;
+            this.offset = offset;
+        }
+    }
+}
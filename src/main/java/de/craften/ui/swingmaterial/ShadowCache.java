@@ -0,0 +1,372 @@
+package de.craften.ui.swingmaterial;
+
+import java.awt.image.BufferedImage;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * A cache for rendered {@link MaterialShadow}s. Shadows are expensive to
+ * compute, but components of the same size and elevation cast identical
+ * shadows, so a single rendered image can be shared by all of them.
+ * <p/>
+ * The cache keeps track of the memory used by its images and evicts the least
+ * recently used ones once its byte budget is exceeded. The shared instance
+ * returned by {@link #getShared()} is used by every {@link MaterialShadow}.
+ * <p/>
+ * Images stored in this cache are shared, so they must never be modified.
+ */
+public class ShadowCache {
+    /**
+     * The default byte budget of the shared cache (32 MiB).
+     */
+    public static final long DEFAULT_MAXIMUM_SIZE = 32L * 1024 * 1024;
+
+    private static final ShadowCache shared = new ShadowCache(DEFAULT_MAXIMUM_SIZE);
+
+    private final LinkedHashMap<Key, BufferedImage> images = new LinkedHashMap<>(16, 0.75f, true);
+    private long maximumSize;
+    private long size;
+    private long hitCount;
+    private long missCount;
+
+    /**
+     * Creates a new, empty {@code ShadowCache}.
+     * @param maximumSize the maximum amount of memory the cached images may
+     *                    use, in bytes
+     */
+    public ShadowCache(long maximumSize) {
+        if (maximumSize < 0) {
+            throw new IllegalArgumentException("Maximum size must not be negative");
+        }
+        this.maximumSize = maximumSize;
+    }
+
+    /**
+     * Gets the process-wide cache shared by all {@link MaterialShadow}s.
+     * @return the shared cache
+     */
+    public static ShadowCache getShared() {
+        return shared;
+    }
+
+    /**
+     * Gets a cached shadow and marks it as recently used.
+     * @param key the key of the shadow
+     * @return the cached shadow, or {@code null} if it is not cached
+     */
+    public synchronized BufferedImage get(Key key) {
+        BufferedImage image = images.get(key);
+        if (image != null) {
+            hitCount++;
+        } else {
+            missCount++;
+        }
+        return image;
+    }
+
+    /**
+     * Checks if a shadow is cached, without counting a hit or miss or marking
+     * it as recently used.
+     * @param key the key of the shadow
+     * @return {@code true} if the shadow is cached
+     */
+    public synchronized boolean contains(Key key) {
+        return images.containsKey(key);
+    }
+
+    /**
+     * Adds a shadow to this cache, evicting the least recently used shadows if
+     * the byte budget is exceeded. Shadows that are larger than the whole
+     * budget are not cached at all.
+     * @param key   the key of the shadow
+     * @param image the rendered shadow
+     */
+    public synchronized void put(Key key, BufferedImage image) {
+        long imageSize = sizeOf(image);
+        if (imageSize > maximumSize) {
+            return;
+        }
+        BufferedImage previous = images.put(key, image);
+        if (previous != null) {
+            size -= sizeOf(previous);
+        }
+        size += imageSize;
+        trim();
+    }
+
+    /**
+     * Removes all shadows from this cache. The hit and miss counts are kept.
+     */
+    public synchronized void clear() {
+        images.clear();
+        size = 0;
+    }
+
+    /**
+     * Gets the maximum amount of memory the cached images may use.
+     * @return the byte budget of this cache
+     */
+    public synchronized long getMaximumSize() {
+        return maximumSize;
+    }
+
+    /**
+     * Sets the maximum amount of memory the cached images may use. If the
+     * cache currently exceeds the new budget, the least recently used shadows
+     * are evicted immediately.
+     * @param maximumSize the new byte budget of this cache
+     */
+    public synchronized void setMaximumSize(long maximumSize) {
+        if (maximumSize < 0) {
+            throw new IllegalArgumentException("Maximum size must not be negative");
+        }
+        this.maximumSize = maximumSize;
+        trim();
+    }
+
+    /**
+     * Gets the amount of memory currently used by the cached images.
+     * @return the current size of this cache, in bytes
+     */
+    public synchronized long getSize() {
+        return size;
+    }
+
+    /**
+     * Gets the number of shadows currently cached.
+     * @return the number of cached shadows
+     */
+    public synchronized int getCount() {
+        return images.size();
+    }
+
+    /**
+     * Gets the number of lookups that found a cached shadow.
+     * @return the hit count
+     */
+    public synchronized long getHitCount() {
+        return hitCount;
+    }
+
+    /**
+     * Gets the number of lookups that did not find a cached shadow.
+     * @return the miss count
+     */
+    public synchronized long getMissCount() {
+        return missCount;
+    }
+
+    /**
+     * Resets the hit and miss counts to zero.
+     */
+    public synchronized void resetStatistics() {
+        hitCount = 0;
+        missCount = 0;
+    }
+
+    private void trim() {
+        Iterator<Map.Entry<Key, BufferedImage>> eldest = images.entrySet().iterator();
+        while (size > maximumSize && eldest.hasNext()) {
+            size -= sizeOf(eldest.next().getValue());
+            eldest.remove();
+        }
+    }
+
+    private static long sizeOf(BufferedImage image) {
+        return (long) image.getWidth() * image.getHeight() * ((image.getColorModel().getPixelSize() + 7) / 8);
+    }
+
+    /**
+     * Identifies a rendered shadow.
+     */
+    public static final class Key {
+        private final int width;
+        private final int height;
+        private final int borderRadius;
+        private final double level;
+        private final MaterialShadow.Type type;
+        private final MaterialShadow.Renderer renderer;
+        private final double scale;
+        private final boolean tight;
+        private final MaterialShadow.Quality quality;
+        private final ShadowOutline outline;
+
+        /**
+         * Creates a new key for a shadow image that spans the whole
+         * component, or the area its shadow covers if it has tight bounds.
+         * @param width        the width of the component casting the shadow,
+         *                     or its diameter if it is circular, in device
+         *                     pixels
+         * @param height       the height of the component casting the shadow,
+         *                     in device pixels
+         * @param borderRadius the border radius of the component casting the
+         *                     shadow
+         * @param level        the elevation level [0~5]
+         * @param type         the type of the shadow
+         * @param renderer     the renderer of the shadow
+         * @param scale        the number of device pixels per logical pixel
+         * @param tight        {@code true} if the shadow image only spans the
+         *                     area the shadow covers at its level
+         * @param quality      the quality of the blur
+         * @see MaterialShadow#setTightBoundsEnabled(boolean)
+         * @see MaterialShadow#setDefaultQuality(MaterialShadow.Quality)
+         */
+        public Key(int width, int height, int borderRadius, double level, MaterialShadow.Type type,
+                   MaterialShadow.Renderer renderer, double scale, boolean tight, MaterialShadow.Quality quality) {
+            this(width, height, borderRadius, level, type, renderer, scale, tight, quality, null);
+        }
+
+        /**
+         * Creates a new key for a blurred shadow of an arbitrary outline.
+         * @param outline the outline, with its bounds starting at the left
+         *                and top offset of the shadow
+         * @param width   the width of the outline and the offsets of the
+         *                shadow, in device pixels
+         * @param height  the height of the outline and the offsets of the
+         *                shadow, in device pixels
+         * @param level   the elevation level [0~5]
+         * @param scale   the number of device pixels per logical pixel
+         * @param tight   {@code true} if the shadow image only spans the area
+         *                the shadow covers at its level
+         * @param quality the quality of the blur
+         */
+        Key(ShadowOutline outline, int width, int height, double level, double scale, boolean tight,
+            MaterialShadow.Quality quality) {
+            this(width, height, 0, level, MaterialShadow.Type.SQUARE, MaterialShadow.Renderer.BLUR, scale, tight,
+                    quality, outline);
+        }
+
+        private Key(int width, int height, int borderRadius, double level, MaterialShadow.Type type,
+                    MaterialShadow.Renderer renderer, double scale, boolean tight, MaterialShadow.Quality quality,
+                    ShadowOutline outline) {
+            this.width = width;
+            this.height = height;
+            this.borderRadius = borderRadius;
+            this.level = level;
+            this.type = type;
+            this.renderer = renderer;
+            this.scale = scale;
+            this.tight = tight;
+            this.quality = quality;
+            this.outline = outline;
+        }
+
+        /**
+         * Gets the width of the component casting the shadow, in device
+         * pixels.
+         * @return the width, or the diameter if the shadow is circular
+         */
+        public int getWidth() {
+            return width;
+        }
+
+        /**
+         * Gets the height of the component casting the shadow, in device
+         * pixels.
+         * @return the height
+         */
+        public int getHeight() {
+            return height;
+        }
+
+        /**
+         * Gets the border radius of the component casting the shadow.
+         * @return the border radius
+         */
+        public int getBorderRadius() {
+            return borderRadius;
+        }
+
+        /**
+         * Gets the elevation level of the shadow.
+         * @return the elevation level [0~5]
+         */
+        public double getLevel() {
+            return level;
+        }
+
+        /**
+         * Gets the type of the shadow.
+         * @return the type
+         */
+        public MaterialShadow.Type getType() {
+            return type;
+        }
+
+        /**
+         * Gets the renderer of the shadow.
+         * @return the renderer
+         */
+        public MaterialShadow.Renderer getRenderer() {
+            return renderer;
+        }
+
+        /**
+         * Gets the number of device pixels per logical pixel the shadow is
+         * rendered at.
+         * @return the scale factor
+         */
+        public double getScale() {
+            return scale;
+        }
+
+        /**
+         * Checks if the shadow image only spans the area the shadow covers at
+         * its level, instead of the whole component.
+         * @return {@code true} if the shadow image is cropped to its shadow
+         */
+        public boolean isTight() {
+            return tight;
+        }
+
+        /**
+         * Gets the quality of the blur of the shadow.
+         * @return the quality
+         */
+        public MaterialShadow.Quality getQuality() {
+            return quality;
+        }
+
+        /**
+         * Gets the outline of the component casting the shadow, if it is not
+         * a (rounded) rectangle or a circle.
+         * @return the outline, or {@code null} if the shadow has a type
+         */
+        ShadowOutline getOutline() {
+            return outline;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            Key key = (Key) o;
+            return width == key.width && height == key.height && borderRadius == key.borderRadius
+                    && Double.compare(level, key.level) == 0 && type == key.type && renderer == key.renderer
+                    && Double.compare(scale, key.scale) == 0 && tight == key.tight && quality == key.quality
+                    && (outline != null ? outline.equals(key.outline) : key.outline == null);
+        }
+
+        @Override
+        public int hashCode() {
+            long levelBits = Double.doubleToLongBits(level);
+            long scaleBits = Double.doubleToLongBits(scale);
+            int result = width;
+            result = 31 * result + height;
+            result = 31 * result + borderRadius;
+            result = 31 * result + (int) (levelBits ^ (levelBits >>> 32));
+            result = 31 * result + (type != null ? type.hashCode() : 0);
+            result = 31 * result + (renderer != null ? renderer.hashCode() : 0);
+            result = 31 * result + (int) (scaleBits ^ (scaleBits >>> 32));
+            result = 31 * result + (tight ? 1 : 0);
+            result = 31 * result + (quality != null ? quality.hashCode() : 0);
+            result = 31 * result + (outline != null ? outline.hashCode() : 0);
+            return result;
+        }
+    }
+}
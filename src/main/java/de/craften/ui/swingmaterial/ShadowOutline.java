@@ -0,0 +1,102 @@
+package de.craften.ui.swingmaterial;
+
+import java.awt.Shape;
+import java.awt.geom.AffineTransform;
+import java.awt.geom.Path2D;
+import java.awt.geom.PathIterator;
+import java.util.Arrays;
+
+/**
+ * The outline of a component that casts a shadow of an arbitrary shape. The
+ * path of the outline is copied, so outlines can be compared and used as part
+ * of a {@link ShadowCache.Key}; identical paths share a single shadow. The
+ * hash code is computed once from the segments of the path.
+ */
+final class ShadowOutline {
+    private final int windingRule;
+    private final byte[] types;
+    private final float[] coords;
+    private final int hash;
+
+    /**
+     * Copies the path of a shape, translated by the given distance.
+     */
+    ShadowOutline(Shape shape, double dx, double dy) {
+        PathIterator path = shape.getPathIterator(AffineTransform.getTranslateInstance(dx, dy));
+        byte[] types = new byte[16];
+        float[] coords = new float[64];
+        float[] segment = new float[6];
+        int count = 0;
+        int length = 0;
+        for (; !path.isDone(); path.next()) {
+            int type = path.currentSegment(segment);
+            int points = type == PathIterator.SEG_CUBICTO ? 3 : type == PathIterator.SEG_QUADTO ? 2
+                    : type == PathIterator.SEG_CLOSE ? 0 : 1;
+            if (count == types.length) {
+                types = Arrays.copyOf(types, count * 2);
+            }
+            if (length + 6 > coords.length) {
+                coords = Arrays.copyOf(coords, coords.length * 2);
+            }
+            types[count++] = (byte) type;
+            System.arraycopy(segment, 0, coords, length, points * 2);
+            length += points * 2;
+        }
+        this.windingRule = path.getWindingRule();
+        this.types = Arrays.copyOf(types, count);
+        this.coords = Arrays.copyOf(coords, length);
+        this.hash = 31 * (31 * windingRule + Arrays.hashCode(this.types)) + Arrays.hashCode(this.coords);
+    }
+
+    /**
+     * Creates a shape of this outline, translated vertically by the given
+     * distance.
+     */
+    Shape createShape(float dy) {
+        Path2D.Float shape = new Path2D.Float(windingRule, types.length);
+        int i = 0;
+        for (byte type : types) {
+            switch (type) {
+                case PathIterator.SEG_MOVETO:
+                    shape.moveTo(coords[i], coords[i + 1] + dy);
+                    i += 2;
+                    break;
+                case PathIterator.SEG_LINETO:
+                    shape.lineTo(coords[i], coords[i + 1] + dy);
+                    i += 2;
+                    break;
+                case PathIterator.SEG_QUADTO:
+                    shape.quadTo(coords[i], coords[i + 1] + dy, coords[i + 2], coords[i + 3] + dy);
+                    i += 4;
+                    break;
+                case PathIterator.SEG_CUBICTO:
+                    shape.curveTo(coords[i], coords[i + 1] + dy, coords[i + 2], coords[i + 3] + dy,
+                            coords[i + 4], coords[i + 5] + dy);
+                    i += 6;
+                    break;
+                default:
+                    shape.closePath();
+                    break;
+            }
+        }
+        return shape;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof ShadowOutline)) {
+            return false;
+        }
+        ShadowOutline outline = (ShadowOutline) o;
+        return hash == outline.hash && windingRule == outline.windingRule && Arrays.equals(types, outline.types)
+                && Arrays.equals(coords, outline.coords);
+    }
+
+    @Override
+    public int hashCode() {
+        return hash;
+    }
+}
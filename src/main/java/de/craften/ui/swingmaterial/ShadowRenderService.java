@@ -0,0 +1,266 @@
+package de.craften.ui.swingmaterial;
+
+import java.awt.image.BufferedImage;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Renders shadows on background threads and puts them into the shared
+ * {@link ShadowCache}. Concurrent requests for the same shadow are collapsed
+ * into a single render. Once it is ready, it is handed to the {@link
+ * MaterialShadow}s that requested it, which repaint their components. The
+ * cache may not keep a shadow until then, if it is larger than the budget of
+ * the cache or evicted right away, so requesters never rely on finding it
+ * there.
+ * <p>
+ * If rendering a shadow fails, the failure is reported to the default
+ * uncaught exception handler and the shadow is not rendered again, so that
+ * repainting its component doesn't keep submitting the same broken render.
+ */
+final class ShadowRenderService {
+    /**
+     * The number of failed renders that are remembered. Beyond that, the
+     * oldest failures are forgotten and may be rendered again.
+     */
+    private static final int MAX_FAILED = 64;
+
+    private static final ConcurrentMap<ShadowCache.Key, Job> pending = new ConcurrentHashMap<>();
+    private static final Map<ShadowCache.Key, Job> failed = new LinkedHashMap<ShadowCache.Key, Job>() {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<ShadowCache.Key, Job> eldest) {
+            return size() > MAX_FAILED;
+        }
+    };
+
+    private ShadowRenderService() {
+    }
+
+    /**
+     * Requests a shadow to be rendered in the background. If the same shadow
+     * is already being rendered, no new render is started. If rendering it
+     * failed before, the failed render is returned instead.
+     * @param key       the key of the shadow
+     * @param requester a shadow to hand the rendered shadow to, or {@code
+     *                  null}
+     * @return a future that completes with the rendered shadow
+     */
+    static Future<BufferedImage> submit(ShadowCache.Key key, MaterialShadow requester) {
+        synchronized (failed) {
+            Job failure = failed.get(key);
+            if (failure != null) {
+                return failure;
+            }
+        }
+        Job job = pending.get(key);
+        if (job == null) {
+            Job created = new Job(key);
+            job = pending.putIfAbsent(key, created);
+            if (job == null) {
+                job = created;
+                ExecutorHolder.EXECUTOR.execute(job);
+            }
+        }
+        if (requester != null) {
+            job.addRequester(requester);
+        }
+        return job;
+    }
+
+    /**
+     * Requests several shadows to be rendered in the background. Shadows that
+     * are already cached are skipped.
+     * @param keys the keys of the shadows
+     * @return a future that completes once all shadows are rendered
+     */
+    static Future<Void> submitAll(Collection<ShadowCache.Key> keys) {
+        List<Future<BufferedImage>> jobs = new ArrayList<>();
+        for (ShadowCache.Key key : keys) {
+            if (!ShadowCache.getShared().contains(key)) {
+                jobs.add(submit(key, null));
+            }
+        }
+        return new Batch(jobs);
+    }
+
+    /**
+     * Gets the number of shadows currently being rendered or waiting to be
+     * rendered.
+     * @return the number of pending shadows
+     */
+    static int getPendingCount() {
+        return pending.size();
+    }
+
+    /**
+     * Forgets all failed renders, so that they are tried again when they are
+     * requested the next time.
+     */
+    static void clearFailures() {
+        synchronized (failed) {
+            failed.clear();
+        }
+    }
+
+    /**
+     * Lazily creates the executor used for rendering.
+     */
+    private static class ExecutorHolder {
+        static final ExecutorService EXECUTOR = Executors.newFixedThreadPool(
+                Math.max(1, Runtime.getRuntime().availableProcessors() - 1), new ThreadFactory() {
+                    private final AtomicInteger count = new AtomicInteger();
+
+                    @Override
+                    public Thread newThread(Runnable runnable) {
+                        Thread thread = new Thread(runnable, "MaterialShadow-renderer-" + count.incrementAndGet());
+                        thread.setDaemon(true);
+                        thread.setPriority(Thread.NORM_PRIORITY - 1);
+                        return thread;
+                    }
+                });
+    }
+
+    /**
+     * Waits for several renders. The renders may be shared with other
+     * requests, so a batch can't be cancelled.
+     */
+    private static class Batch implements Future<Void> {
+        private final List<Future<BufferedImage>> jobs;
+
+        Batch(List<Future<BufferedImage>> jobs) {
+            this.jobs = jobs;
+        }
+
+        @Override
+        public boolean cancel(boolean mayInterruptIfRunning) {
+            return false;
+        }
+
+        @Override
+        public boolean isCancelled() {
+            return false;
+        }
+
+        @Override
+        public boolean isDone() {
+            for (Future<BufferedImage> job : jobs) {
+                if (!job.isDone()) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        @Override
+        public Void get() throws InterruptedException, ExecutionException {
+            for (Future<BufferedImage> job : jobs) {
+                job.get();
+            }
+            return null;
+        }
+
+        @Override
+        public Void get(long timeout, TimeUnit unit) throws InterruptedException, ExecutionException,
+                TimeoutException {
+            long deadline = System.nanoTime() + unit.toNanos(timeout);
+            for (Future<BufferedImage> job : jobs) {
+                job.get(deadline - System.nanoTime(), TimeUnit.NANOSECONDS);
+            }
+            return null;
+        }
+    }
+
+    /**
+     * Renders a single shadow and hands it to the shadows waiting for it.
+     */
+    private static class Job extends FutureTask<BufferedImage> {
+        private final ShadowCache.Key key;
+        private final List<MaterialShadow> requesters = new ArrayList<>();
+        private boolean finished;
+
+        Job(final ShadowCache.Key key) {
+            super(new Callable<BufferedImage>() {
+                @Override
+                public BufferedImage call() {
+                    BufferedImage image = MaterialShadow.render(key);
+                    ShadowCache.getShared().put(key, image);
+                    return image;
+                }
+            });
+            this.key = key;
+        }
+
+        void addRequester(MaterialShadow requester) {
+            synchronized (requesters) {
+                if (!finished) {
+                    if (!requesters.contains(requester)) {
+                        requesters.add(requester);
+                    }
+                    return;
+                }
+            }
+            BufferedImage image = getRendered();
+            if (image != null) {
+                requester.deliver(key, image);
+            }
+        }
+
+        @Override
+        protected void done() {
+            if (!isCancelled()) {
+                try {
+                    get();
+                } catch (ExecutionException e) {
+                    synchronized (failed) {
+                        failed.put(key, this);
+                    }
+                    report(e.getCause());
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            pending.remove(key, this);
+            List<MaterialShadow> waiting;
+            synchronized (requesters) {
+                finished = true;
+                waiting = new ArrayList<>(requesters);
+                requesters.clear();
+            }
+            BufferedImage image = getRendered();
+            if (image != null) {
+                for (MaterialShadow requester : waiting) {
+                    requester.deliver(key, image);
+                }
+            }
+        }
+
+        /**
+         * Reports a failed render to the default uncaught exception handler,
+         * or to the handler of the current thread if there is none.
+         */
+        private static void report(Throwable failure) {
+            Thread thread = Thread.currentThread();
+            Thread.UncaughtExceptionHandler handler = Thread.getDefaultUncaughtExceptionHandler();
+            if (handler == null) {
+                handler = thread.getUncaughtExceptionHandler();
+            }
+            handler.uncaughtException(thread, failure);
+        }
+
+        /**
+         * Gets the rendered shadow once this job is done.
+         * @return the shadow, or {@code null} if rendering failed
+         */
+        private BufferedImage getRendered() {
+            try {
+                return get();
+            } catch (InterruptedException | ExecutionException | CancellationException e) {
+                return null;
+            }
+        }
+    }
+}
@@ -0,0 +1,218 @@
+package de.craften.ui.swingmaterial;
+
+import javax.swing.*;
+import javax.swing.event.ChangeEvent;
+import javax.swing.event.ChangeListener;
+import java.awt.*;
+import java.awt.event.ActionEvent;
+import java.awt.event.ActionListener;
+import java.awt.image.BufferedImage;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Limits the time spent rendering shadows while painting a frame. Shadows
+ * that don't fit into the budget of the current frame are deferred, and
+ * rendered on the event dispatch thread in later frames, a budget at a time.
+ * Shadows of components that are showing are rendered first. Deferred
+ * shadows are handed to the {@link MaterialShadow}s that requested them once
+ * they are ready, so that the repaint of their components finds them even if
+ * the shared cache doesn't keep them.
+ */
+final class ShadowScheduler {
+    /**
+     * The interval between two frames that render deferred shadows, in
+     * milliseconds.
+     */
+    private static final int FRAME_INTERVAL = 16;
+
+    private static final Map<ShadowCache.Key, List<MaterialShadow>> deferred = new LinkedHashMap<>();
+    private static final List<ChangeListener> listeners = new CopyOnWriteArrayList<>();
+    private static volatile long budget = Long.MAX_VALUE;
+    private static long spent;
+    private static Timer timer;
+
+    private ShadowScheduler() {
+    }
+
+    /**
+     * Sets the time that may be spent rendering shadows in a frame.
+     * @param nanos the budget, in nanoseconds, or {@link Long#MAX_VALUE} if
+     *              it is unlimited
+     */
+    static void setBudget(long nanos) {
+        budget = nanos;
+    }
+
+    /**
+     * Renders a shadow that is not cached yet and puts it into the shared
+     * cache if the budget of the current frame isn't used up yet, or defers
+     * it otherwise.
+     * @param key       the key of the shadow
+     * @param requester the shadow to hand a deferred shadow to once it is
+     *                  ready
+     * @return the shadow, or {@code null} if it was deferred
+     */
+    static BufferedImage render(ShadowCache.Key key, MaterialShadow requester) {
+        boolean limited = budget != Long.MAX_VALUE;
+        if (limited && !hasBudget()) {
+            defer(key, requester);
+            return null;
+        }
+        long start = System.nanoTime();
+        BufferedImage image = MaterialShadow.render(key);
+        ShadowCache.getShared().put(key, image);
+        if (limited) {
+            spend(System.nanoTime() - start);
+        }
+        return image;
+    }
+
+    /**
+     * Gets the number of shadows waiting to be rendered in a later frame.
+     * @return the number of deferred shadows
+     */
+    static synchronized int getDeferredCount() {
+        return deferred.size();
+    }
+
+    static void addChangeListener(ChangeListener listener) {
+        listeners.add(listener);
+    }
+
+    static void removeChangeListener(ChangeListener listener) {
+        listeners.remove(listener);
+    }
+
+    private static synchronized boolean hasBudget() {
+        return spent < budget;
+    }
+
+    /**
+     * Adds rendering time to the current frame. The first render of a frame
+     * posts an event that starts the next frame once the current one is
+     * painted.
+     */
+    private static synchronized void spend(long nanos) {
+        if (spent == 0) {
+            SwingUtilities.invokeLater(new Runnable() {
+                @Override
+                public void run() {
+                    startFrame();
+                }
+            });
+        }
+        spent = Math.max(1, spent + nanos);
+    }
+
+    private static synchronized void startFrame() {
+        spent = 0;
+    }
+
+    private static void defer(ShadowCache.Key key, MaterialShadow requester) {
+        boolean added;
+        synchronized (ShadowScheduler.class) {
+            List<MaterialShadow> requesters = deferred.get(key);
+            added = requesters == null;
+            if (added) {
+                requesters = new ArrayList<>();
+                deferred.put(key, requesters);
+            }
+            if (!requesters.contains(requester)) {
+                requesters.add(requester);
+            }
+            if (timer == null) {
+                timer = new Timer(FRAME_INTERVAL, new ActionListener() {
+                    @Override
+                    public void actionPerformed(ActionEvent e) {
+                        renderDeferred();
+                    }
+                });
+                timer.setCoalesce(true);
+            }
+            if (!timer.isRunning()) {
+                timer.start();
+            }
+        }
+        if (added) {
+            fireChanged();
+        }
+    }
+
+    /**
+     * Renders deferred shadows until the budget of a frame is used up, but at
+     * least one of them. Shadows of components that are showing go first.
+     */
+    private static void renderDeferred() {
+        startFrame();
+        long start = System.nanoTime();
+        int rendered = 0;
+        while (rendered == 0 || System.nanoTime() - start < budget) {
+            Map.Entry<ShadowCache.Key, List<MaterialShadow>> next = next();
+            if (next == null) {
+                break;
+            }
+            ShadowCache cache = ShadowCache.getShared();
+            BufferedImage image = cache.get(next.getKey());
+            if (image == null) {
+                image = MaterialShadow.render(next.getKey());
+                cache.put(next.getKey(), image);
+                rendered++;
+            }
+            for (MaterialShadow requester : next.getValue()) {
+                requester.deliver(next.getKey(), image);
+            }
+        }
+        synchronized (ShadowScheduler.class) {
+            if (deferred.isEmpty()) {
+                timer.stop();
+            }
+        }
+        fireChanged();
+    }
+
+    /**
+     * Removes the deferred shadow with the highest priority from the queue.
+     * @return the shadow and its requesters, or {@code null} if none is left
+     */
+    private static synchronized Map.Entry<ShadowCache.Key, List<MaterialShadow>> next() {
+        Map.Entry<ShadowCache.Key, List<MaterialShadow>> next = null;
+        for (Map.Entry<ShadowCache.Key, List<MaterialShadow>> entry : deferred.entrySet()) {
+            if (next == null) {
+                next = entry;
+            }
+            if (isVisible(entry.getValue())) {
+                next = entry;
+                break;
+            }
+        }
+        if (next != null) {
+            deferred.remove(next.getKey());
+        }
+        return next;
+    }
+
+    private static boolean isVisible(List<MaterialShadow> requesters) {
+        for (MaterialShadow requester : requesters) {
+            Component owner = requester.getOwner();
+            if (owner.isShowing() && (!(owner instanceof JComponent)
+                    || !((JComponent) owner).getVisibleRect().isEmpty())) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static void fireChanged() {
+        if (listeners.isEmpty()) {
+            return;
+        }
+        ChangeEvent event = new ChangeEvent(ShadowScheduler.class);
+        for (ChangeListener listener : listeners) {
+            listener.stateChanged(event);
+        }
+    }
+}
@@ -0,0 +1,168 @@
+package de.craften.ui.swingmaterial;
+
+/**
+ * Describes a shadow that a component will paint, so that it can be
+ * {@link MaterialShadow#prewarm(java.util.Collection) rendered ahead} of time.
+ */
+public final class ShadowSpec {
+    private final int width;
+    private final int height;
+    private final int borderRadius;
+    private final double level;
+    private final MaterialShadow.Type type;
+    private final double scale;
+    private final MaterialShadow.Quality quality;
+
+    /**
+     * Creates a new spec for a shadow painted on a screen that doesn't scale
+     * the user interface.
+     * @param width        the width of the component casting the shadow, or
+     *                     its diameter if it is circular
+     * @param height       the height of the component casting the shadow
+     * @param borderRadius the border radius of the component casting the
+     *                     shadow
+     * @param level        the elevation level [0~5]
+     * @param type         the type of the shadow
+     */
+    public ShadowSpec(int width, int height, int borderRadius, double level, MaterialShadow.Type type) {
+        this(width, height, borderRadius, level, type, 1);
+    }
+
+    /**
+     * Creates a new spec.
+     * @param width        the width of the component casting the shadow, or
+     *                     its diameter if it is circular
+     * @param height       the height of the component casting the shadow
+     * @param borderRadius the border radius of the component casting the
+     *                     shadow
+     * @param level        the elevation level [0~5]
+     * @param type         the type of the shadow
+     * @param scale        the number of device pixels per logical pixel of
+     *                     the screen the shadow is painted on, as given by
+     *                     the default transform of its graphics configuration
+     */
+    public ShadowSpec(int width, int height, int borderRadius, double level, MaterialShadow.Type type, double scale) {
+        this(width, height, borderRadius, level, type, scale, null);
+    }
+
+    /**
+     * Creates a new spec for a shadow with its own quality, like one of a
+     * component whose {@link ElevationEffect#setShadowQuality(MaterialShadow.Quality)
+     * shadow quality} was set.
+     * @param width        the width of the component casting the shadow, or
+     *                     its diameter if it is circular
+     * @param height       the height of the component casting the shadow
+     * @param borderRadius the border radius of the component casting the
+     *                     shadow
+     * @param level        the elevation level [0~5]
+     * @param type         the type of the shadow
+     * @param scale        the number of device pixels per logical pixel of
+     *                     the screen the shadow is painted on, as given by
+     *                     the default transform of its graphics configuration
+     * @param quality      the quality of the shadow, or {@code null} if it
+     *                     has the {@link MaterialShadow#getDefaultQuality()
+     *                     default quality}
+     */
+    public ShadowSpec(int width, int height, int borderRadius, double level, MaterialShadow.Type type, double scale,
+                      MaterialShadow.Quality quality) {
+        if (type == null) {
+            throw new IllegalArgumentException("Type must not be null");
+        }
+        if (!(scale > 0)) {
+            throw new IllegalArgumentException("Scale must be positive");
+        }
+        this.width = width;
+        this.height = height;
+        this.borderRadius = borderRadius;
+        this.level = level;
+        this.type = type;
+        this.scale = scale;
+        this.quality = quality;
+    }
+
+    /**
+     * Gets the width of the component casting the shadow.
+     * @return the width, or the diameter if the shadow is circular
+     */
+    public int getWidth() {
+        return width;
+    }
+
+    /**
+     * Gets the height of the component casting the shadow.
+     * @return the height
+     */
+    public int getHeight() {
+        return height;
+    }
+
+    /**
+     * Gets the border radius of the component casting the shadow.
+     * @return the border radius
+     */
+    public int getBorderRadius() {
+        return borderRadius;
+    }
+
+    /**
+     * Gets the elevation level of the shadow.
+     * @return the elevation level [0~5]
+     */
+    public double getLevel() {
+        return level;
+    }
+
+    /**
+     * Gets the type of the shadow.
+     * @return the type
+     */
+    public MaterialShadow.Type getType() {
+        return type;
+    }
+
+    /**
+     * Gets the number of device pixels per logical pixel of the screen the
+     * shadow is painted on.
+     * @return the scale factor
+     */
+    public double getScale() {
+        return scale;
+    }
+
+    /**
+     * Gets the quality of the shadow.
+     * @return the quality, or {@code null} if the shadow has the {@link
+     *         MaterialShadow#getDefaultQuality() default quality}
+     */
+    public MaterialShadow.Quality getQuality() {
+        return quality;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof ShadowSpec)) {
+            return false;
+        }
+        ShadowSpec spec = (ShadowSpec) o;
+        return width == spec.width && height == spec.height && borderRadius == spec.borderRadius
+                && Double.compare(level, spec.level) == 0 && type == spec.type
+                && Double.compare(scale, spec.scale) == 0 && quality == spec.quality;
+    }
+
+    @Override
+    public int hashCode() {
+        long levelBits = Double.doubleToLongBits(level);
+        long scaleBits = Double.doubleToLongBits(scale);
+        int result = width;
+        result = 31 * result + height;
+        result = 31 * result + borderRadius;
+        result = 31 * result + (int) (levelBits ^ (levelBits >>> 32));
+        result = 31 * result + type.hashCode();
+        result = 31 * result + (int) (scaleBits ^ (scaleBits >>> 32));
+        result = 31 * result + (quality != null ? quality.hashCode() : 0);
+        return result;
+    }
+}
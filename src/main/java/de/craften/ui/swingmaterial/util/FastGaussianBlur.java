@@ -1,10 +1,9 @@
 package de.craften.ui.swingmaterial.util;
 
 import java.awt.image.BufferedImage;
-import java.util.concurrent.ExecutionException;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
-import java.util.concurrent.Future;
+import java.lang.ref.SoftReference;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
 
 import static java.awt.Color.blue;
 import static java.awt.Color.green;
@@ -15,31 +14,593 @@ import static java.awt.Color.green;
  * @see <a href="http://blog.ivank.net/fastest-gaussian-blur.html">Fastest Gaussian Blur (in linear time)</a>
  */
 public class FastGaussianBlur {
+    /**
+     * The default number of pixels an image must have to be blurred in
+     * parallel.
+     */
+    public static final int DEFAULT_PARALLEL_THRESHOLD = 256 * 1024;
+
+    /**
+     * The number of pixels below which a part of a pass is not split any
+     * further when blurring in parallel.
+     */
+    private static final int PARALLEL_GRAIN = 16 * 1024;
+
+    /**
+     * The number of fractional bits used for the fixed-point reciprocal of the
+     * box size. {@code 255 << 22} still fits into an int.
+     */
+    static final int PRECISION = 22;
+
+    /**
+     * The largest scratch buffer, in ints or floats, that is kept for reuse by
+     * a thread. Larger buffers are only kept through a soft reference, so that
+     * a thread that once blurred a huge image doesn't pin the memory of its
+     * buffers for as long as it lives.
+     */
+    private static final int MAX_RETAINED_SCRATCH = 256 * 1024;
+
+    /**
+     * The number of columns processed together by the vertical pass.
+     */
+    static final int TILE_WIDTH = 256;
+
+    private static final ThreadLocal<Scratch> scratch = new ThreadLocal<Scratch>() {
+        @Override
+        protected Scratch initialValue() {
+            return new Scratch();
+        }
+    };
+
+    private static volatile boolean parallelEnabled = false;
+    private static volatile int parallelThreshold = DEFAULT_PARALLEL_THRESHOLD;
+
+    /**
+     * Checks if large images are blurred in parallel.
+     *
+     * @return {@code true} if parallel blurring is enabled
+     */
+    public static boolean isParallelEnabled() {
+        return parallelEnabled;
+    }
+
+    /**
+     * Enables or disables blurring large images in parallel. If enabled, the
+     * horizontal passes are split by rows and the vertical passes are split by
+     * bands of columns, and the parts are blurred on a {@link ForkJoinPool}.
+     * The result is identical to blurring on the calling thread. It is
+     * disabled by default.
+     *
+     * @param enabled {@code true} to enable parallel blurring
+     * @see #setParallelThreshold(int)
+     */
+    public static void setParallelEnabled(boolean enabled) {
+        parallelEnabled = enabled;
+    }
+
+    /**
+     * Gets the number of pixels an image must have to be blurred in parallel.
+     *
+     * @return the parallel threshold, in pixels
+     */
+    public static int getParallelThreshold() {
+        return parallelThreshold;
+    }
+
+    /**
+     * Sets the number of pixels an image must have to be blurred in parallel.
+     * Smaller images are always blurred on the calling thread, because
+     * splitting them costs more than it saves.
+     *
+     * @param threshold the parallel threshold, in pixels
+     */
+    public static void setParallelThreshold(int threshold) {
+        if (threshold < 0) {
+            throw new IllegalArgumentException("Parallel threshold must not be negative");
+        }
+        parallelThreshold = threshold;
+    }
+
+    private static final boolean VECTOR_AVAILABLE = VectorBoxBlur.isAvailable();
+    private static volatile boolean vectorEnabled = true;
+
+    /**
+     * Checks if this runtime can blur using SIMD instructions. This needs Java
+     * 17 or later, started with {@code --add-modules jdk.incubator.vector}.
+     *
+     * @return {@code true} if the Vector API is available
+     */
+    public static boolean isVectorAvailable() {
+        return VECTOR_AVAILABLE;
+    }
+
+    /**
+     * Checks if the vertical passes use SIMD instructions if they are
+     * available.
+     *
+     * @return {@code true} if vectorized blurring is enabled
+     */
+    public static boolean isVectorEnabled() {
+        return vectorEnabled;
+    }
+
+    /**
+     * Enables or disables using SIMD instructions for the vertical passes if
+     * the {@link #isVectorAvailable() Vector API is available}. The vertical
+     * pass keeps an independent running sum per column, so several columns
+     * are processed at once. The horizontal pass keeps a single running sum
+     * per row and is not vectorized. The result is identical to the scalar
+     * passes. It is enabled by default.
+     *
+     * @param enabled {@code true} to enable vectorized blurring
+     */
+    public static void setVectorEnabled(boolean enabled) {
+        vectorEnabled = enabled;
+    }
+
+    /**
+     * Blurs all channels of an image in place. The pixels are copied into a
+     * reused buffer and back, so the image stays managed and can still be
+     * accelerated by Java2D afterwards.
+     *
+     * @param image  the image to blur
+     * @param radius the blur radius
+     */
     public static void blur(BufferedImage image, final double radius) {
         final int w = image.getWidth();
         final int h = image.getHeight();
-        final int[] pixels = new int[w * h];
-        image.getRGB(0, 0, w, h, pixels, 0, w);
+        if (w == 0 || h == 0) {
+            return;
+        }
+        Scratch buffers = scratch.get();
+        final int[] pixels = buffers.pixels(w * h);
+        boolean packed = readPixels(image, pixels);
 
-        int[][] channels = new int[4][];
-        for (int channel = 0; channel <= 3; channel++) {
-            int[] red = new int[w * h];
-            int[] blurRed = new int[w * h];
+        int[] channel = buffers.source(w * h);
+        int[] temp = buffers.target(w * h);
+        for (int shift = 0; shift <= 24; shift += 8) {
+            for (int i = 0; i < w * h; i++) {
+                channel[i] = (pixels[i] >>> shift) & 0xff;
+            }
+            gaussBlur_4(channel, temp, w, h, radius, buffers.boxes(3));
+            int mask = ~(0xff << shift);
             for (int i = 0; i < w * h; i++) {
-                red[i] = (pixels[i] >> (channel * 8)) & 0xff;
+                pixels[i] = (pixels[i] & mask) | channel[i] << shift;
             }
-            gaussBlur_4(red, blurRed, w, h, radius);
-            channels[channel] = blurRed;
         }
 
-        for (int i = 0; i < w * h; i++) {
-            pixels[i] = channels[0][i] | channels[1][i] << 8 | channels[2][i] << 16 | channels[3][i] << 24;
+        writePixels(image, pixels, packed);
+        buffers.release();
+    }
+
+    /**
+     * Blurs only the alpha channel of an image and fills the colour channels
+     * with a single colour afterwards. This is four times cheaper than {@link
+     * #blur(BufferedImage, double)} and gives the same result for images that
+     * only contain a single colour with varying alpha, like shadows. Like
+     * {@link #blur(BufferedImage, double)}, this keeps the image managed.
+     *
+     * @param image  the image to blur
+     * @param radius the blur radius
+     * @param rgb    the colour of the resulting image, as {@code 0xRRGGBB}
+     */
+    public static void blurAlpha(BufferedImage image, final double radius, int rgb) {
+        blurAlpha(image, radius, rgb, 1);
+    }
+
+    /**
+     * Blurs only the alpha channel of an image at a reduced resolution and
+     * fills the colour channels with a single colour afterwards. The alpha
+     * channel is averaged down by the given factor, blurred with a
+     * proportionally smaller radius and scaled back up bilinearly. For large
+     * radii the result is visually very close to a full-resolution blur, at a
+     * fraction of the cost.
+     *
+     * @param image        the image to blur
+     * @param radius       the blur radius
+     * @param rgb          the colour of the resulting image, as
+     *                     {@code 0xRRGGBB}
+     * @param downsampling the factor to reduce the resolution by, {@code 1}
+     *                     to blur at full resolution
+     * @see #blurAlpha(BufferedImage, double, int)
+     */
+    public static void blurAlpha(BufferedImage image, final double radius, int rgb, int downsampling) {
+        if (downsampling < 1) {
+            throw new IllegalArgumentException("Downsampling factor must be positive");
         }
+        final int w = image.getWidth();
+        final int h = image.getHeight();
+        if (w == 0 || h == 0) {
+            return;
+        }
+        Scratch buffers = scratch.get();
+        final int[] pixels = buffers.pixels(w * h);
+        boolean packed = readPixels(image, pixels);
+
+        int[] alpha = buffers.source(w * h);
+        if (downsampling == 1) {
+            for (int i = 0; i < w * h; i++) {
+                alpha[i] = pixels[i] >>> 24;
+            }
+            gaussBlur_4(alpha, buffers.target(w * h), w, h, radius, buffers.boxes(3));
+        } else {
+            final int sw = (w + downsampling - 1) / downsampling + 2;
+            final int sh = (h + downsampling - 1) / downsampling + 2;
+            int[] reduced = buffers.reduced(sw * sh);
+            downsampleAlpha(pixels, w, h, reduced, sw, sh, downsampling, 24);
+            gaussBlur_4(reduced, buffers.target(sw * sh), sw, sh, radius / downsampling, buffers.boxes(3));
+            upsample(reduced, sw, sh, alpha, w, h, downsampling, buffers.target(3 * w));
+        }
+
+        if (packed && image.isAlphaPremultiplied()) {
+            int r = (rgb >> 16) & 0xff;
+            int g = (rgb >> 8) & 0xff;
+            int b = rgb & 0xff;
+            for (int i = 0; i < w * h; i++) {
+                int a = alpha[i];
+                pixels[i] = a << 24 | (r * a + 127) / 255 << 16 | (g * a + 127) / 255 << 8 | (b * a + 127) / 255;
+            }
+        } else {
+            rgb &= 0xffffff;
+            for (int i = 0; i < w * h; i++) {
+                pixels[i] = alpha[i] << 24 | rgb;
+            }
+        }
+
+        writePixels(image, pixels, packed);
+        buffers.release();
+    }
+
+    /**
+     * Blurs an alpha channel that is given as one value [0~255] per pixel, in
+     * place. This is the same blur as {@link #blurAlpha(BufferedImage, double,
+     * int, int)} without reading or writing an image, so that several
+     * channels can be blurred and then combined in a single pass.
+     *
+     * @param alpha        the alpha values, row by row without any padding
+     * @param width        the width of the channel
+     * @param height       the height of the channel
+     * @param radius       the blur radius
+     * @param downsampling the factor to reduce the resolution by, {@code 1}
+     *                     to blur at full resolution
+     */
+    public static void blurAlpha(int[] alpha, int width, int height, double radius, int downsampling) {
+        blurAlpha(alpha, width, height, radius, downsampling, 3);
+    }
+
+    /**
+     * Gets a buffer for an alpha channel that is reused by all blurs on the
+     * current thread, so that channels can be filled and blurred without
+     * allocating them every time. There are two planes, so that two channels
+     * can be blurred and then combined. A plane is only valid until it is
+     * requested again on the same thread, and its contents are undefined.
+     *
+     * @param plane the index of the plane [0~1]
+     * @param size  the number of values the plane must hold
+     * @return the plane, which may be larger than requested
+     * @see #blurAlpha(int[], int, int, double, int)
+     */
+    public static int[] getAlphaPlane(int plane, int size) {
+        if (plane < 0 || plane > 1) {
+            throw new IllegalArgumentException("Plane must be 0 or 1");
+        }
+        return scratch.get().plane(plane, size);
+    }
+
+    /**
+     * Blurs an alpha channel in place, approximating the Gaussian with the
+     * given number of box blur passes. Fewer passes are cheaper, but the
+     * result is less smooth: a single pass spreads edges linearly, two passes
+     * spread them along a parabola, and three passes are already very close
+     * to a Gaussian.
+     *
+     * @param alpha        the alpha values, row by row without any padding
+     * @param width        the width of the channel
+     * @param height       the height of the channel
+     * @param radius       the blur radius
+     * @param downsampling the factor to reduce the resolution by, {@code 1}
+     *                     to blur at full resolution
+     * @param passes       the number of box blur passes [1~3]
+     * @see #blurAlpha(int[], int, int, double, int)
+     */
+    public static void blurAlpha(int[] alpha, int width, int height, double radius, int downsampling, int passes) {
+        if (downsampling < 1) {
+            throw new IllegalArgumentException("Downsampling factor must be positive");
+        }
+        if (passes < 1 || passes > 3) {
+            throw new IllegalArgumentException("Number of passes must be between 1 and 3 (inclusive)");
+        }
+        if (width == 0 || height == 0) {
+            return;
+        }
+        Scratch buffers = scratch.get();
+        if (downsampling == 1) {
+            gaussBlur_4(alpha, buffers.target(width * height), width, height, radius, buffers.boxes(passes));
+        } else {
+            int sw = (width + downsampling - 1) / downsampling + 2;
+            int sh = (height + downsampling - 1) / downsampling + 2;
+            int[] reduced = buffers.reduced(sw * sh);
+            downsampleAlpha(alpha, width, height, reduced, sw, sh, downsampling, 0);
+            gaussBlur_4(reduced, buffers.target(sw * sh), sw, sh, radius / downsampling, buffers.boxes(passes));
+            upsample(reduced, sw, sh, alpha, width, height, downsampling, buffers.target(3 * width));
+        }
+        buffers.release();
+    }
+
+    /**
+     * Blurs an alpha channel in place with a true Gaussian, convolving the
+     * rows and then the columns with a kernel that reaches three standard
+     * deviations. This is several times slower than the box blur passes, and
+     * gets slower with the radius, but it has no box artifacts at all.
+     *
+     * @param alpha  the alpha values, row by row without any padding
+     * @param width  the width of the channel
+     * @param height the height of the channel
+     * @param radius the blur radius, i.e. the standard deviation
+     * @see #getExactExtent(double)
+     */
+    public static void blurAlphaExact(int[] alpha, int width, int height, double radius) {
+        int extent = getExactExtent(radius);
+        if (width == 0 || height == 0 || extent == 0) {
+            return;
+        }
+        float[] kernel = new float[extent + 1];
+        float sum = 0;
+        for (int i = 0; i <= extent; i++) {
+            kernel[i] = (float) Math.exp(-i * i / (2 * radius * radius));
+            sum += i == 0 ? kernel[i] : 2 * kernel[i];
+        }
+        for (int i = 0; i <= extent; i++) {
+            kernel[i] /= sum;
+        }
+
+        Scratch buffers = scratch.get();
+        float[] rows = buffers.rows(width * height);
+        for (int y = 0; y < height; y++) {
+            int row = y * width;
+            for (int x = 0; x < width; x++) {
+                float value = kernel[0] * alpha[row + x];
+                for (int i = 1; i <= extent; i++) {
+                    value += kernel[i] * (alpha[row + Math.max(x - i, 0)] + alpha[row + Math.min(x + i, width - 1)]);
+                }
+                rows[row + x] = value;
+            }
+        }
+        float[] column = buffers.column(width);
+        for (int y = 0; y < height; y++) {
+            int row = y * width;
+            for (int x = 0; x < width; x++) {
+                column[x] = kernel[0] * rows[row + x];
+            }
+            for (int i = 1; i <= extent; i++) {
+                int above = Math.max(y - i, 0) * width;
+                int below = Math.min(y + i, height - 1) * width;
+                float weight = kernel[i];
+                for (int x = 0; x < width; x++) {
+                    column[x] += weight * (rows[above + x] + rows[below + x]);
+                }
+            }
+            for (int x = 0; x < width; x++) {
+                alpha[row + x] = Math.min((int) (column[x] + 0.5f), 255);
+            }
+        }
+        buffers.release();
+    }
+
+    /**
+     * Reads the pixels of an image into a buffer. Pixels of {@code
+     * TYPE_INT_ARGB} and {@code TYPE_INT_ARGB_PRE} images are copied as they
+     * are stored, without converting the colour model of every pixel. The
+     * array backing the image is never taken, because that would keep Java2D
+     * from accelerating the image from then on.
+     *
+     * @param image  the image
+     * @param pixels the buffer to read into, one packed int per pixel
+     * @return {@code true} if the pixels were copied as they are stored,
+     *         {@code false} if they were converted to non-premultiplied ARGB
+     */
+    private static boolean readPixels(BufferedImage image, int[] pixels) {
+        int w = image.getWidth();
+        int h = image.getHeight();
+        if (image.getType() == BufferedImage.TYPE_INT_ARGB || image.getType() == BufferedImage.TYPE_INT_ARGB_PRE) {
+            image.getRaster().getDataElements(0, 0, w, h, pixels);
+            return true;
+        }
+        image.getRGB(0, 0, w, h, pixels, 0, w);
+        return false;
+    }
+
+    /**
+     * Writes pixels that were read by {@link #readPixels(BufferedImage,
+     * int[])} back into an image.
+     *
+     * @param image  the image
+     * @param pixels the pixels, one packed int per pixel
+     * @param packed whether the pixels are stored like in the image
+     */
+    private static void writePixels(BufferedImage image, int[] pixels, boolean packed) {
+        int w = image.getWidth();
+        int h = image.getHeight();
+        if (packed) {
+            image.getRaster().setDataElements(0, 0, w, h, pixels);
+        } else {
+            image.setRGB(0, 0, w, h, pixels, 0, w);
+        }
+    }
+
+    /**
+     * Gets the distance, in pixels, that a blur with the given radius spreads
+     * the contents of an image. Pixels that are farther away than this from
+     * any edge of a shape are not affected by blurring it.
+     *
+     * @param radius the blur radius
+     * @return the extent of the blur, in pixels
+     */
+    public static int getExtent(double radius) {
+        return getExtent(radius, 1, 3);
+    }
+
+    /**
+     * Gets the distance, in pixels, that a blur with the given radius at a
+     * reduced resolution spreads the contents of an image.
+     *
+     * @param radius       the blur radius
+     * @param downsampling the factor the resolution is reduced by
+     * @return the extent of the blur, in pixels
+     * @see #blurAlpha(BufferedImage, double, int, int)
+     */
+    public static int getExtent(double radius, int downsampling) {
+        return getExtent(radius, downsampling, 3);
+    }
+
+    /**
+     * Gets the distance, in pixels, that a blur with the given radius and
+     * number of box blur passes at a reduced resolution spreads the contents
+     * of an image.
+     *
+     * @param radius       the blur radius
+     * @param downsampling the factor the resolution is reduced by
+     * @param passes       the number of box blur passes [1~3]
+     * @return the extent of the blur, in pixels
+     * @see #blurAlpha(int[], int, int, double, int, int)
+     */
+    public static int getExtent(double radius, int downsampling, int passes) {
+        if (downsampling != 1) {
+            return (getExtent(radius / downsampling, 1, passes) + 1) * downsampling;
+        }
+        int[] bxs = new int[passes];
+        boxesForGauss(radius, bxs);
+        int extent = 0;
+        for (int box : bxs) {
+            extent += (box - 1) / 2;
+        }
+        return extent;
+    }
 
-        image.setRGB(0, 0, w, h, pixels, 0, w);
+    /**
+     * Gets the distance, in pixels, that an exact Gaussian blur with the
+     * given radius spreads the contents of an image.
+     *
+     * @param radius the blur radius, i.e. the standard deviation
+     * @return the extent of the blur, in pixels
+     * @see #blurAlphaExact(int[], int, int, double)
+     */
+    public static int getExactExtent(double radius) {
+        return radius > 0 ? (int) Math.ceil(3 * radius) : 0;
     }
 
-    private static int[] boxesForGauss(double sigma, int n) {// standard deviation, number of boxes
+    /**
+     * Reduces the resolution of the alpha channel of packed ARGB pixels by
+     * averaging blocks of {@code factor x factor} pixels, into a grid with a
+     * border of one block around it. The blur passes treat pixels beyond the
+     * edges of an image as copies of the edge pixels, so the blocks at the
+     * right and bottom edges are filled up with copies of the edge pixels,
+     * and the border holds the edge pixels themselves. Blurring the grid then
+     * continues the edge pixels beyond the edges of the image like a blur at
+     * full resolution does, instead of the blocks along the edges, which
+     * average the edge pixels with their neighbours. The alpha is taken from
+     * the bits above the given shift, i.e. {@code 24} for packed pixels and
+     * {@code 0} for plain alpha values.
+     *
+     * @param sw the width of the grid, including the border
+     * @param sh the height of the grid, including the border
+     */
+    private static void downsampleAlpha(int[] pixels, int w, int h, int[] tcl, int sw, int sh, int factor, int shift) {
+        final int area = factor * factor;
+        for (int sy = 0; sy < sh; sy++) {
+            int ti = sy * sw;
+            for (int sx = 0; sx < sw; sx++) {
+                tcl[ti + sx] = 0;
+            }
+            for (int j = 0; j < factor; j++) {
+                int row = Math.min(Math.max((sy - 1) * factor + j, 0), h - 1) * w;
+                int first = pixels[row] >>> shift;
+                int last = pixels[row + w - 1] >>> shift;
+                tcl[ti] += factor * first;
+                int x = 0;
+                for (int sx = 1; sx < sw - 1; sx++) {
+                    int end = Math.min(x + factor, w);
+                    int sum = (x + factor - end) * last;
+                    for (; x < end; x++) {
+                        sum += pixels[row + x] >>> shift;
+                    }
+                    tcl[ti + sx] += sum;
+                }
+                tcl[ti + sw - 1] += factor * last;
+            }
+            for (int sx = 0; sx < sw; sx++) {
+                tcl[ti + sx] = (tcl[ti + sx] + area / 2) / area;
+            }
+        }
+    }
+
+    /**
+     * Scales a downsampled channel with a border of one block back up with
+     * bilinear interpolation, using 8-bit fixed-point weights. Every pixel
+     * lies between the centers of two blocks, or a block and the border, so
+     * no pixel is clamped. The interpolation is separable: every source row
+     * is first scaled horizontally into one of two row buffers, which are
+     * then interpolated vertically for all target rows between them.
+     *
+     * @param sw     the width of the downsampled channel, including the border
+     * @param sh     the height of the downsampled channel, including the
+     *               border
+     * @param buffer scratch space for at least {@code 3 * w} ints
+     */
+    private static void upsample(int[] scl, int sw, int sh, int[] tcl, int w, int h, int factor, int[] buffer) {
+        final int columns = 0;
+        int upper = w;
+        int lower = 2 * w;
+        for (int x = 0; x < w; x++) {
+            buffer[columns + x] = ((2 * x + 1 + factor) << 8) / (2 * factor);
+        }
+        int upperRow = -1;
+        int lowerRow = -1;
+        for (int y = 0; y < h; y++) {
+            int v = ((2 * y + 1 + factor) << 8) / (2 * factor);
+            int sy = v >> 8;
+            int fy = v & 0xff;
+            if (sy != upperRow) {
+                if (sy == lowerRow) {
+                    int swap = upper;
+                    upper = lower;
+                    lower = swap;
+                } else {
+                    upsampleRow(scl, sy * sw, buffer, upper, w, columns);
+                }
+                upperRow = sy;
+                lowerRow = -1;
+            }
+            int ti = y * w;
+            if (fy == 0) {
+                for (int x = 0; x < w; x++) {
+                    tcl[ti++] = (buffer[upper + x] + (1 << 7)) >>> 8;
+                }
+            } else {
+                if (lowerRow != sy + 1) {
+                    upsampleRow(scl, (sy + 1) * sw, buffer, lower, w, columns);
+                    lowerRow = sy + 1;
+                }
+                for (int x = 0; x < w; x++) {
+                    tcl[ti++] = (buffer[upper + x] * (256 - fy) + buffer[lower + x] * fy + (1 << 15)) >>> 16;
+                }
+            }
+        }
+    }
+
+    /**
+     * Scales a single row horizontally, keeping 8 fractional bits.
+     */
+    private static void upsampleRow(int[] scl, int row, int[] buffer, int target, int w, int columns) {
+        for (int x = 0; x < w; x++) {
+            int sx = row + (buffer[columns + x] >> 8);
+            int fx = buffer[columns + x] & 0xff;
+            buffer[target + x] = fx == 0 ? scl[sx] << 8 : scl[sx] * (256 - fx) + scl[sx + 1] * fx;
+        }
+    }
+
+    private static void boxesForGauss(double sigma, int[] sizes) {// standard deviation, sizes of the boxes
+        int n = sizes.length;
         double wIdeal = Math.sqrt((12 * sigma * sigma / n) + 1);  // Ideal averaging filter width
         int wl = (int) Math.floor(wIdeal);
         if (wl % 2 == 0) {
@@ -50,84 +611,364 @@ public class FastGaussianBlur {
         double mIdeal = (12 * sigma * sigma - n * wl * wl - 4 * n * wl - 3 * n) / (-4 * wl - 4);
         int m = (int) Math.round(mIdeal);
 
-        int[] sizes = new int[n];
         for (int i = 0; i < n; i++) {
             sizes[i] = i < m ? wl : wu;
         }
-        return sizes;
     }
 
-    private static void gaussBlur_4(int[] scl, int[] tcl, int w, int h, double r) {
-        int[] bxs = boxesForGauss(r, 3);
-        boxBlur_4(scl, tcl, w, h, (bxs[0] - 1) / 2);
-        boxBlur_4(tcl, scl, w, h, (bxs[1] - 1) / 2);
-        boxBlur_4(scl, tcl, w, h, (bxs[2] - 1) / 2);
+    /**
+     * Blurs a channel in place.
+     *
+     * @param scl the channel to blur, which also receives the result
+     * @param tcl a scratch buffer of the same size
+     */
+    private static void gaussBlur_4(int[] scl, int[] tcl, int w, int h, double r, int[] bxs) {
+        boxesForGauss(r, bxs);
+        boolean parallel = parallelEnabled && (long) w * h >= parallelThreshold;
+        for (int box : bxs) {
+            boxBlur_4(scl, tcl, w, h, (box - 1) / 2, parallel);
+        }
+    }
+
+    /**
+     * Runs a horizontal and a vertical box blur pass. The horizontal pass
+     * writes into {@code tcl} and the vertical pass writes back into
+     * {@code scl}.
+     */
+    private static void boxBlur_4(int[] scl, int[] tcl, int w, int h, int r, boolean parallel) {
+        if (r == 0) {
+            return;
+        }
+        if (parallel) {
+            ForkJoinPool pool = PoolHolder.POOL;
+            pool.invoke(new BoxBlurTask(scl, tcl, w, h, r, true, 0, h));
+            pool.invoke(new BoxBlurTask(tcl, scl, w, h, r, false, 0, w));
+        } else {
+            boxBlurH_4(scl, tcl, w, h, r, 0, h);
+            boxBlurT_4(tcl, scl, w, h, r, 0, w);
+        }
     }
 
-    private static void boxBlur_4(int[] scl, int[] tcl, int w, int h, double r) {
-        System.arraycopy(scl, 0, tcl, 0, scl.length);
-        boxBlurH_4(tcl, scl, w, h, r);
-        boxBlurT_4(scl, tcl, w, h, r);
+    /**
+     * Gets the fixed-point reciprocal of the size of a box with the given
+     * radius.
+     */
+    private static int reciprocal(int r) {
+        int size = r + r + 1;
+        return ((1 << PRECISION) + size / 2) / size;
     }
 
-    private static void boxBlurH_4(int[] scl, int[] tcl, int w, int h, double r) {
-        double iarr = 1.0 / (r + r + 1);
-        for (int i = 0; i < h; i++) {
+    private static void boxBlurH_4(int[] scl, int[] tcl, int w, int h, int r, int fromRow, int toRow) {
+        if (r + r >= w) {
+            boxBlurClamped(scl, tcl, w, h, r, fromRow, toRow, 1, w);
+            return;
+        }
+        final int iarr = reciprocal(r);
+        final int half = 1 << (PRECISION - 1);
+        for (int i = fromRow; i < toRow; i++) {
             int ti = i * w;
             int li = ti;
-            int ri = (int) (ti + r);
+            int ri = ti + r;
             int fv = scl[ti];
             int lv = scl[ti + w - 1];
-            double val = (r + 1) * fv;
+            int val = (r + 1) * fv;
             for (int j = 0; j < r; j++) {
                 val += scl[ti + j];
             }
             for (int j = 0; j <= r; j++) {
                 val += scl[ri++] - fv;
-                tcl[ti++] = (int) Math.round(val * iarr);
+                tcl[ti++] = (val * iarr + half) >>> PRECISION;
             }
-            for (int j = (int) (r + 1); j < w - r; j++) {
+            for (int j = r + 1; j < w - r; j++) {
                 val += scl[ri++] - scl[li++];
-                tcl[ti++] = (int) Math.round(val * iarr);
+                tcl[ti++] = (val * iarr + half) >>> PRECISION;
             }
-            for (int j = (int) (w - r); j < w; j++) {
+            for (int j = w - r; j < w; j++) {
                 val += lv - scl[li++];
-                tcl[ti++] = (int) Math.round(val * iarr);
+                tcl[ti++] = (val * iarr + half) >>> PRECISION;
             }
         }
     }
 
-    private static void boxBlurT_4(int[] scl, int[] tcl, int w, int h, double r) {
-        double iarr = 1.0 / (r + r + 1);
-        for (int i = 0; i < w; i++) {
-            int ti = i;
-            int li = ti;
-            int ri = (int) (ti + r * w);
-            int fv = scl[ti];
-            int lv = scl[ti + w * (h - 1)];
-            double val = (r + 1) * fv;
+    /**
+     * The vertical pass, using SIMD instructions if they are available and
+     * enabled.
+     */
+    private static void boxBlurT_4(int[] scl, int[] tcl, int w, int h, int r, int fromColumn, int toColumn) {
+        if (r + r >= h) {
+            boxBlurClamped(scl, tcl, h, w, r, fromColumn, toColumn, w, 1);
+        } else if (vectorEnabled && VECTOR_AVAILABLE) {
+            VectorBoxBlur.blurColumns(scl, tcl, w, h, r, fromColumn, toColumn, scratch.get().columns());
+        } else {
+            blurColumnsScalar(scl, tcl, w, h, r, fromColumn, toColumn, scratch.get().columns());
+        }
+    }
+
+    /**
+     * The scalar vertical pass. Instead of walking down every column with a
+     * stride of {@code w}, which misses the cache on nearly every access for
+     * wide images, it processes strips of {@link #TILE_WIDTH} columns at once
+     * and walks them row by row, keeping one running sum per column. Every
+     * step only touches the same short stretch of three rows. Boxes must be
+     * shorter than the columns.
+     *
+     * @param val scratch space for one running sum per column of a tile
+     */
+    static void blurColumnsScalar(int[] scl, int[] tcl, int w, int h, int r, int fromColumn, int toColumn,
+                                  int[] val) {
+        final int iarr = reciprocal(r);
+        final int half = 1 << (PRECISION - 1);
+        final int last = w * (h - 1);
+        for (int x0 = fromColumn; x0 < toColumn; x0 += TILE_WIDTH) {
+            final int n = Math.min(TILE_WIDTH, toColumn - x0);
+            for (int c = 0; c < n; c++) {
+                val[c] = (r + 1) * scl[x0 + c];
+            }
             for (int j = 0; j < r; j++) {
-                val += scl[ti + j * w];
+                int row = j * w + x0;
+                for (int c = 0; c < n; c++) {
+                    val[c] += scl[row + c];
+                }
             }
+            int ti = x0;
+            int li = x0;
+            int ri = r * w + x0;
             for (int j = 0; j <= r; j++) {
-                val += scl[ri] - fv;
-                tcl[ti] = (int) Math.round(val * iarr);
+                for (int c = 0; c < n; c++) {
+                    val[c] += scl[ri + c] - scl[x0 + c];
+                    tcl[ti + c] = (val[c] * iarr + half) >>> PRECISION;
+                }
                 ri += w;
                 ti += w;
             }
-            for (int j = (int) (r + 1); j < h - r; j++) {
-                val += scl[ri] - scl[li];
-                tcl[ti] = (int) Math.round(val * iarr);
+            for (int j = r + 1; j < h - r; j++) {
+                for (int c = 0; c < n; c++) {
+                    val[c] += scl[ri + c] - scl[li + c];
+                    tcl[ti + c] = (val[c] * iarr + half) >>> PRECISION;
+                }
                 li += w;
                 ri += w;
                 ti += w;
             }
-            for (int j = (int) (h - r); j < h; j++) {
-                val += lv - scl[li];
-                tcl[ti] = (int) Math.round(val * iarr);
+            for (int j = h - r; j < h; j++) {
+                for (int c = 0; c < n; c++) {
+                    val[c] += scl[last + x0 + c] - scl[li + c];
+                    tcl[ti + c] = (val[c] * iarr + half) >>> PRECISION;
+                }
                 li += w;
                 ti += w;
             }
         }
     }
+
+    /**
+     * A box blur pass over lines that are too short for the box, so that
+     * every read needs to be clamped to the line. Pixels outside of the image
+     * have the value of the nearest edge pixel, just like in the fast passes.
+     *
+     * @param length     the number of pixels in a line
+     * @param lines      the number of lines
+     * @param pixelStep  the distance between two pixels of a line in the arrays
+     * @param lineStep   the distance between two lines in the arrays
+     */
+    private static void boxBlurClamped(int[] scl, int[] tcl, int length, int lines, int r, int fromLine, int toLine,
+                                       int pixelStep, int lineStep) {
+        final int iarr = reciprocal(r);
+        final int half = 1 << (PRECISION - 1);
+        final int last = length - 1;
+        for (int i = fromLine; i < toLine; i++) {
+            int line = i * lineStep;
+            int val = 0;
+            for (int j = -r - 1; j < r; j++) {
+                val += scl[line + Math.min(Math.max(j, 0), last) * pixelStep];
+            }
+            for (int j = 0; j < length; j++) {
+                val += scl[line + Math.min(j + r, last) * pixelStep] - scl[line + Math.max(j - r - 1, 0) * pixelStep];
+                tcl[line + j * pixelStep] = (val * iarr + half) >>> PRECISION;
+            }
+        }
+    }
+
+    /**
+     * Lazily creates the pool used for parallel blurring.
+     */
+    private static class PoolHolder {
+        static final ForkJoinPool POOL = new ForkJoinPool();
+    }
+
+    /**
+     * Scratch buffers that are reused by all blurs on the same thread. The
+     * buffers are rounded up to a few sizes per power of two, so that a
+     * stream of slightly different sizes doesn't reallocate them every time.
+     */
+    private static class Scratch {
+        private final int[][] boxes = {new int[1], new int[2], new int[3]};
+        private final int[] columns = new int[TILE_WIDTH];
+        private final IntSlot[] planes = {new IntSlot(), new IntSlot()};
+        private final IntSlot pixels = new IntSlot();
+        private final IntSlot source = new IntSlot();
+        private final IntSlot target = new IntSlot();
+        private final IntSlot reduced = new IntSlot();
+        private final FloatSlot rows = new FloatSlot();
+        private final FloatSlot column = new FloatSlot();
+
+        int[] boxes(int passes) {
+            return boxes[passes - 1];
+        }
+
+        int[] pixels(int size) {
+            return pixels.get(size);
+        }
+
+        int[] source(int size) {
+            return source.get(size);
+        }
+
+        int[] target(int size) {
+            return target.get(size);
+        }
+
+        int[] reduced(int size) {
+            return reduced.get(size);
+        }
+
+        int[] columns() {
+            return columns;
+        }
+
+        int[] plane(int index, int size) {
+            return planes[index].get(size);
+        }
+
+        float[] rows(int size) {
+            return rows.get(size);
+        }
+
+        float[] column(int size) {
+            return column.get(size);
+        }
+
+        /**
+         * Only keeps buffers that are too large to be kept around softly.
+         */
+        void release() {
+            pixels.release();
+            source.release();
+            target.release();
+            reduced.release();
+            planes[0].release();
+            planes[1].release();
+            rows.release();
+            column.release();
+        }
+
+        /**
+         * Rounds a size up to one of eight buckets per power of two, which
+         * wastes at most an eighth of the buffer.
+         */
+        private static int bucket(int size) {
+            int step = Math.max(Integer.highestOneBit(size) >> 3, 1);
+            return (size + step - 1) / step * step;
+        }
+
+        /**
+         * A scratch buffer that grows as needed. Once released, buffers of up
+         * to {@link #MAX_RETAINED_SCRATCH} values are kept as they are, and
+         * larger ones only through a soft reference.
+         */
+        private abstract static class Slot<T> {
+            private T buffer;
+            private SoftReference<T> released;
+
+            T get(int size) {
+                if (buffer == null && released != null) {
+                    buffer = released.get();
+                    released = null;
+                }
+                if (buffer == null || length(buffer) < size) {
+                    buffer = create(bucket(size));
+                }
+                return buffer;
+            }
+
+            void release() {
+                if (buffer != null && length(buffer) > MAX_RETAINED_SCRATCH) {
+                    released = new SoftReference<>(buffer);
+                    buffer = null;
+                }
+            }
+
+            abstract int length(T buffer);
+
+            abstract T create(int size);
+        }
+
+        private static class IntSlot extends Slot<int[]> {
+            @Override
+            int length(int[] buffer) {
+                return buffer.length;
+            }
+
+            @Override
+            int[] create(int size) {
+                return new int[size];
+            }
+        }
+
+        private static class FloatSlot extends Slot<float[]> {
+            @Override
+            int length(float[] buffer) {
+                return buffer.length;
+            }
+
+            @Override
+            float[] create(int size) {
+                return new float[size];
+            }
+        }
+    }
+
+    /**
+     * One pass of a box blur over a range of rows (horizontal pass) or
+     * columns (vertical pass), split in halves until the parts are small.
+     */
+    private static class BoxBlurTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final int[] scl;
+        private final int[] tcl;
+        private final int w;
+        private final int h;
+        private final int r;
+        private final boolean horizontal;
+        private final int from;
+        private final int to;
+
+        BoxBlurTask(int[] scl, int[] tcl, int w, int h, int r, boolean horizontal, int from, int to) {
+            this.scl = scl;
+            this.tcl = tcl;
+            this.w = w;
+            this.h = h;
+            this.r = r;
+            this.horizontal = horizontal;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            int lineLength = horizontal ? w : h;
+            if (to - from < 2 || (long) (to - from) * lineLength <= PARALLEL_GRAIN) {
+                if (horizontal) {
+                    boxBlurH_4(scl, tcl, w, h, r, from, to);
+                } else {
+                    boxBlurT_4(scl, tcl, w, h, r, from, to);
+                }
+            } else {
+                int middle = (from + to) >>> 1;
+                invokeAll(new BoxBlurTask(scl, tcl, w, h, r, horizontal, from, middle),
+                        new BoxBlurTask(scl, tcl, w, h, r, horizontal, middle, to));
+            }
+        }
+    }
 }
@@ -0,0 +1,250 @@
+package de.craften.ui.swingmaterial.util;
+
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.awt.image.WritableRaster;
+
+/**
+ * An image that can be stretched to any size without distortion. The image
+ * is split into nine regions by four insets: the corners are painted as they
+ * are, the edges are stretched along one axis and the center is stretched
+ * along both axes.
+ */
+public class NinePatch {
+    private final BufferedImage image;
+    private final int left;
+    private final int top;
+    private final int right;
+    private final int bottom;
+
+    /**
+     * Creates a new nine-patch.
+     *
+     * @param image  the source image
+     * @param left   the width of the left edge, in pixels
+     * @param top    the height of the top edge, in pixels
+     * @param right  the width of the right edge, in pixels
+     * @param bottom the height of the bottom edge, in pixels
+     */
+    public NinePatch(BufferedImage image, int left, int top, int right, int bottom) {
+        if (left + right >= image.getWidth() || top + bottom >= image.getHeight()) {
+            throw new IllegalArgumentException("The insets of a nine-patch must leave a center region");
+        }
+        this.image = image;
+        this.left = left;
+        this.top = top;
+        this.right = right;
+        this.bottom = bottom;
+    }
+
+    /**
+     * Gets the source image of this nine-patch.
+     *
+     * @return the source image
+     */
+    public BufferedImage getImage() {
+        return image;
+    }
+
+    /**
+     * Gets the smallest width this nine-patch can be painted with.
+     *
+     * @return the minimum width, in pixels
+     */
+    public int getMinimumWidth() {
+        return left + right + 1;
+    }
+
+    /**
+     * Gets the smallest height this nine-patch can be painted with.
+     *
+     * @return the minimum height, in pixels
+     */
+    public int getMinimumHeight() {
+        return top + bottom + 1;
+    }
+
+    /**
+     * Paints this nine-patch stretched to the given bounds. Only the part
+     * within the clip of the canvas is copied: regions outside of it are
+     * skipped, and regions that are painted at their original size, or
+     * stretched from a single row or column, are cut down to the clip.
+     *
+     * @param g      canvas
+     * @param x      the x coordinate to paint at
+     * @param y      the y coordinate to paint at
+     * @param width  the width to stretch this nine-patch to
+     * @param height the height to stretch this nine-patch to
+     */
+    public void paint(Graphics g, int x, int y, int width, int height) {
+        Rectangle clip = g.getClipBounds();
+        paintArea(g, x, y, width, height, clip != null ? clip : new Rectangle(x, y, width, height));
+    }
+
+    /**
+     * Paints this nine-patch stretched to the given bounds, except for the
+     * given area, e.g. because it is covered anyway. Only the part within the
+     * clip of the canvas is copied.
+     *
+     * @param g      canvas
+     * @param x      the x coordinate to paint at
+     * @param y      the y coordinate to paint at
+     * @param width  the width to stretch this nine-patch to
+     * @param height the height to stretch this nine-patch to
+     * @param hole   the area not to paint
+     */
+    public void paint(Graphics g, int x, int y, int width, int height, Rectangle hole) {
+        Rectangle area = new Rectangle(x, y, width, height);
+        Rectangle clip = g.getClipBounds();
+        if (clip != null) {
+            area = area.intersection(clip);
+        }
+        if (!hole.intersects(area)) {
+            paintArea(g, x, y, width, height, area);
+            return;
+        }
+        int holeBottom = hole.y + hole.height;
+        int holeRight = hole.x + hole.width;
+        paintArea(g, x, y, width, height, area.intersection(new Rectangle(x, y, width, hole.y - y)));
+        paintArea(g, x, y, width, height, area.intersection(new Rectangle(x, holeBottom, width, y + height - holeBottom)));
+        paintArea(g, x, y, width, height, area.intersection(new Rectangle(x, hole.y, hole.x - x, hole.height)));
+        paintArea(g, x, y, width, height, area.intersection(new Rectangle(holeRight, hole.y, x + width - holeRight, hole.height)));
+    }
+
+    /**
+     * Paints the part of this nine-patch stretched to the given bounds that
+     * is within the given area.
+     */
+    private void paintArea(Graphics g, int x, int y, int width, int height, Rectangle area) {
+        if (area.isEmpty()) {
+            return;
+        }
+        int sw = image.getWidth();
+        int sh = image.getHeight();
+        int[] sx = {0, left, sw - right, sw};
+        int[] sy = {0, top, sh - bottom, sh};
+        int[] dx = {x, x + left, x + width - right, x + width};
+        int[] dy = {y, y + top, y + height - bottom, y + height};
+        int[] columns = new int[4];
+        int[] rows = new int[4];
+        for (int row = 0; row < 3; row++) {
+            if (!clip(dy, sy, row, area.y, area.y + area.height, rows)) {
+                continue;
+            }
+            for (int column = 0; column < 3; column++) {
+                if (clip(dx, sx, column, area.x, area.x + area.width, columns)) {
+                    g.drawImage(image, columns[0], rows[0], columns[1], rows[1],
+                            columns[2], rows[2], columns[3], rows[3], null);
+                }
+            }
+        }
+    }
+
+    /**
+     * Cuts one region of a nine-patch down to a clip along one axis, writing
+     * the destination and source bounds to the given array. The source can
+     * only be cut if the region isn't stretched, or stretched from a single
+     * pixel.
+     *
+     * @return {@code false} if the region is outside of the clip
+     */
+    private static boolean clip(int[] destination, int[] source, int region, int clipStart, int clipEnd, int[] result) {
+        int d0 = destination[region];
+        int d1 = destination[region + 1];
+        int s0 = source[region];
+        int s1 = source[region + 1];
+        int from = Math.max(d0, clipStart);
+        int to = Math.min(d1, clipEnd);
+        if (from >= to || d0 >= d1) {
+            return false;
+        }
+        if (s1 - s0 == d1 - d0) {
+            s1 = s0 + to - d0;
+            s0 += from - d0;
+            d0 = from;
+            d1 = to;
+        } else if (s1 - s0 == 1) {
+            d0 = from;
+            d1 = to;
+        }
+        result[0] = d0;
+        result[1] = d1;
+        result[2] = s0;
+        result[3] = s1;
+        return true;
+    }
+
+    /**
+     * Renders this nine-patch stretched to the given size into a new image.
+     * The pixels are copied as they are, so the new image has the same color
+     * model as the source image, and rows that are stretched from the same
+     * source row are only assembled once.
+     *
+     * @param width  the width of the resulting image
+     * @param height the height of the resulting image
+     * @return a new image with the stretched contents of this nine-patch
+     */
+    public BufferedImage render(int width, int height) {
+        int sw = image.getWidth();
+        int sh = image.getHeight();
+        int[] sx = {0, left, sw - right, sw};
+        int[] sy = {0, top, sh - bottom, sh};
+        int[] dx = {0, left, width - right, width};
+        int[] dy = {0, top, height - bottom, height};
+        WritableRaster source = image.getRaster();
+        WritableRaster target = source.createCompatibleWritableRaster(width, height);
+        Object sourceRow = null;
+        Object targetRow = null;
+        int previous = -1;
+        for (int row = 0; row < 3; row++) {
+            for (int y = dy[row]; y < dy[row + 1]; y++) {
+                int v = map(y, dy, sy, row);
+                if (v != previous) {
+                    sourceRow = source.getDataElements(0, v, sw, 1, sourceRow);
+                    targetRow = target.getDataElements(0, 0, width, 1, targetRow);
+                    for (int column = 0; column < 3; column++) {
+                        stretch(sourceRow, targetRow, dx, sx, column);
+                    }
+                    previous = v;
+                }
+                target.setDataElements(0, y, width, 1, targetRow);
+            }
+        }
+        return new BufferedImage(image.getColorModel(), target, image.isAlphaPremultiplied(), null);
+    }
+
+    /**
+     * Maps a destination coordinate within a region to its source coordinate,
+     * using the nearest source pixel.
+     */
+    private static int map(int d, int[] destination, int[] source, int region) {
+        int d0 = destination[region];
+        return source[region] + (int) ((d - d0 + 0.5) * (source[region + 1] - source[region])
+                / (destination[region + 1] - d0));
+    }
+
+    /**
+     * Copies one region of a row of pixels, stretching it to its destination.
+     */
+    private static void stretch(Object sourceRow, Object targetRow, int[] destination, int[] source, int region) {
+        int d0 = destination[region];
+        int d1 = destination[region + 1];
+        int s0 = source[region];
+        int length = d1 - d0;
+        if (length <= 0) {
+            return;
+        }
+        if (source[region + 1] - s0 == length) {
+            System.arraycopy(sourceRow, s0, targetRow, d0, length);
+        } else if (source[region + 1] - s0 == 1) {
+            System.arraycopy(sourceRow, s0, targetRow, d0, 1);
+            for (int filled = 1; filled < length; filled *= 2) {
+                System.arraycopy(targetRow, d0, targetRow, d0 + filled, Math.min(filled, length - filled));
+            }
+        } else {
+            for (int d = d0; d < d1; d++) {
+                System.arraycopy(sourceRow, map(d, destination, source, region), targetRow, d, 1);
+            }
+        }
+    }
+}
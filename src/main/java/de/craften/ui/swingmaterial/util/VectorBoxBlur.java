@@ -0,0 +1,33 @@
+package de.craften.ui.swingmaterial.util;
+
+/**
+ * The vertical box blur pass using SIMD instructions. This is the version for
+ * Java runtimes without the Vector API, where it is never available. On Java
+ * 17 and later, the multi-release JAR replaces it with a version that uses
+ * {@code jdk.incubator.vector} if that module is present.
+ *
+ * @see FastGaussianBlur#isVectorAvailable()
+ */
+final class VectorBoxBlur {
+    private VectorBoxBlur() {
+    }
+
+    /**
+     * Checks if this runtime can run the vectorized pass. This is a method
+     * rather than a constant, so that it isn't inlined into the callers when
+     * compiling them against this version.
+     */
+    static boolean isAvailable() {
+        return false;
+    }
+
+    /**
+     * Runs the vertical pass over the given columns. Without the Vector API,
+     * this is the scalar pass.
+     *
+     * @param val scratch space for one running sum per column of a tile
+     */
+    static void blurColumns(int[] scl, int[] tcl, int w, int h, int r, int fromColumn, int toColumn, int[] val) {
+        FastGaussianBlur.blurColumnsScalar(scl, tcl, w, h, r, fromColumn, toColumn, val);
+    }
+}
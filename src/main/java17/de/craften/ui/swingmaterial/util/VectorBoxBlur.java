@@ -0,0 +1,39 @@
+package de.craften.ui.swingmaterial.util;
+
+/**
+ * The vertical box blur pass using SIMD instructions, for Java 17 and later.
+ * The Vector API is an incubator module, so it is only available if the
+ * application is started with {@code --add-modules jdk.incubator.vector}.
+ * Otherwise, the scalar pass is used, and the classes using the Vector API
+ * are never loaded.
+ *
+ * @see FastGaussianBlur#isVectorAvailable()
+ */
+final class VectorBoxBlur {
+    private static final boolean AVAILABLE = ModuleLayer.boot().findModule("jdk.incubator.vector").isPresent();
+
+    private VectorBoxBlur() {
+    }
+
+    /**
+     * Checks if this runtime can run the vectorized pass.
+     */
+    static boolean isAvailable() {
+        return AVAILABLE;
+    }
+
+    /**
+     * Runs the vertical pass over the given columns, with the same result as
+     * the scalar pass, which it falls back to if the Vector API is not
+     * available.
+     *
+     * @param val scratch space for one running sum per column of a tile
+     */
+    static void blurColumns(int[] scl, int[] tcl, int w, int h, int r, int fromColumn, int toColumn, int[] val) {
+        if (AVAILABLE) {
+            VectorBoxBlurKernel.blurColumns(scl, tcl, w, h, r, fromColumn, toColumn, val);
+        } else {
+            FastGaussianBlur.blurColumnsScalar(scl, tcl, w, h, r, fromColumn, toColumn, val);
+        }
+    }
+}
@@ -0,0 +1,98 @@
+package de.craften.ui.swingmaterial.util;
+
+import jdk.incubator.vector.IntVector;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * The vertical box blur pass of {@link FastGaussianBlur}, processing as many
+ * columns at once as the preferred vector of the CPU holds. The running sums
+ * of a tile of columns are independent of each other, so they are updated
+ * lane by lane with exactly the same integer arithmetic as the scalar pass.
+ * Columns that don't fill a whole vector are processed one at a time.
+ */
+final class VectorBoxBlurKernel {
+    private static final VectorSpecies<Integer> SPECIES = IntVector.SPECIES_PREFERRED;
+
+    private VectorBoxBlurKernel() {
+    }
+
+    static void blurColumns(int[] scl, int[] tcl, int w, int h, int r, int fromColumn, int toColumn, int[] val) {
+        final int size = r + r + 1;
+        final int iarr = ((1 << FastGaussianBlur.PRECISION) + size / 2) / size;
+        final int last = w * (h - 1);
+        for (int x0 = fromColumn; x0 < toColumn; x0 += FastGaussianBlur.TILE_WIDTH) {
+            final int n = Math.min(FastGaussianBlur.TILE_WIDTH, toColumn - x0);
+            start(scl, val, x0, r, n);
+            for (int j = 0; j < r; j++) {
+                add(scl, val, j * w + x0, n);
+            }
+            int ti = x0;
+            int li = x0;
+            int ri = r * w + x0;
+            for (int j = 0; j <= r; j++) {
+                step(scl, tcl, val, ri, x0, ti, iarr, n);
+                ri += w;
+                ti += w;
+            }
+            for (int j = r + 1; j < h - r; j++) {
+                step(scl, tcl, val, ri, li, ti, iarr, n);
+                li += w;
+                ri += w;
+                ti += w;
+            }
+            for (int j = h - r; j < h; j++) {
+                step(scl, tcl, val, last + x0, li, ti, iarr, n);
+                li += w;
+                ti += w;
+            }
+        }
+    }
+
+    /**
+     * Starts the running sums with the first row repeated beyond the top of
+     * the image.
+     */
+    private static void start(int[] scl, int[] val, int row, int r, int n) {
+        int c = 0;
+        for (int bound = SPECIES.loopBound(n); c < bound; c += SPECIES.length()) {
+            IntVector.fromArray(SPECIES, scl, row + c).mul(r + 1).intoArray(val, c);
+        }
+        for (; c < n; c++) {
+            val[c] = (r + 1) * scl[row + c];
+        }
+    }
+
+    /**
+     * Adds a row to the running sums.
+     */
+    private static void add(int[] scl, int[] val, int row, int n) {
+        int c = 0;
+        for (int bound = SPECIES.loopBound(n); c < bound; c += SPECIES.length()) {
+            IntVector.fromArray(SPECIES, val, c).add(IntVector.fromArray(SPECIES, scl, row + c)).intoArray(val, c);
+        }
+        for (; c < n; c++) {
+            val[c] += scl[row + c];
+        }
+    }
+
+    /**
+     * Moves the box down by a row, adding the row entering it and removing the
+     * row leaving it, and writes the averages into the target row.
+     */
+    private static void step(int[] scl, int[] tcl, int[] val, int ri, int li, int ti, int iarr, int n) {
+        final int half = 1 << (FastGaussianBlur.PRECISION - 1);
+        int c = 0;
+        for (int bound = SPECIES.loopBound(n); c < bound; c += SPECIES.length()) {
+            IntVector sum = IntVector.fromArray(SPECIES, val, c)
+                    .add(IntVector.fromArray(SPECIES, scl, ri + c))
+                    .sub(IntVector.fromArray(SPECIES, scl, li + c));
+            sum.intoArray(val, c);
+            sum.mul(iarr).add(half).lanewise(VectorOperators.LSHR, FastGaussianBlur.PRECISION).intoArray(tcl, ti + c);
+        }
+        for (; c < n; c++) {
+            val[c] += scl[ri + c] - scl[li + c];
+            tcl[ti + c] = (val[c] * iarr + half) >>> FastGaussianBlur.PRECISION;
+        }
+    }
+}
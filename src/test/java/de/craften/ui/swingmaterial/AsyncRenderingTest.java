@@ -0,0 +1,227 @@
+package de.craften.ui.swingmaterial;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import javax.swing.*;
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Tests rendering shadows in the background or in later frames while
+ * painting.
+ */
+public class AsyncRenderingTest {
+    private ShadowCache cache;
+    private RepaintCounter owner;
+
+    @Before
+    public void setUp() {
+        cache = ShadowCache.getShared();
+        cache.clear();
+        MaterialShadow.setAsyncRenderingEnabled(true);
+        MaterialShadow.setNinePatchEnabled(false);
+        owner = new RepaintCounter();
+    }
+
+    @After
+    public void tearDown() {
+        MaterialShadow.setAsyncRenderingEnabled(false);
+        MaterialShadow.setFrameBudget(Double.POSITIVE_INFINITY);
+        MaterialShadow.setNinePatchEnabled(true);
+        cache.setMaximumSize(ShadowCache.DEFAULT_MAXIMUM_SIZE);
+        cache.clear();
+        ShadowRenderService.clearFailures();
+    }
+
+    @Test
+    public void paintsShadowRenderedInBackground() throws InterruptedException {
+        MaterialShadow shadow = new MaterialShadow(owner);
+        assertEquals(0, paint(shadow, 5));
+        assertTrue("the owner was not repainted", owner.awaitRepaint());
+        assertTrue("the shadow was not painted", paint(shadow, 5) > 0);
+        assertTrue(cache.getCount() > 0);
+    }
+
+    /**
+     * A shadow that is larger than the budget of the cache is not cached, so
+     * the repaint of its component must not start the next render of it.
+     */
+    @Test
+    public void paintsShadowLargerThanCache() throws InterruptedException {
+        cache.setMaximumSize(100000);
+        MaterialShadow shadow = new MaterialShadow(owner);
+        assertEquals(0, paint(shadow, 5));
+        assertTrue("the owner was not repainted", owner.awaitRepaint());
+        assertTrue("the shadow was not painted", paint(shadow, 5) > 0);
+        assertEquals(0, cache.getCount());
+        assertEquals(0, ShadowRenderService.getPendingCount());
+
+        Thread.sleep(500);
+        assertEquals(1, owner.getRepaintCount());
+    }
+
+    /**
+     * Both levels of a crossfade are rendered in the background, and both
+     * must still be available when the component is repainted, even if the
+     * cache only has room for one of them.
+     */
+    @Test
+    public void crossfadesShadowsLargerThanCache() throws InterruptedException {
+        cache.setMaximumSize(500000);
+        double step = MaterialShadow.getLevelQuantization();
+        MaterialShadow.setLevelQuantization(0.25);
+        try {
+            MaterialShadow shadow = new MaterialShadow(owner);
+            paint(shadow, 2.1);
+            long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+            while (ShadowRenderService.getPendingCount() > 0 && System.nanoTime() < deadline) {
+                owner.awaitRepaint();
+            }
+            int before = owner.getRepaintCount();
+            assertTrue("the shadow was not painted", paint(shadow, 2.1) > 0);
+            assertEquals(0, ShadowRenderService.getPendingCount());
+
+            Thread.sleep(500);
+            assertEquals(before, owner.getRepaintCount());
+        } finally {
+            MaterialShadow.setLevelQuantization(step);
+        }
+    }
+
+    /**
+     * Shadows that don't fit into the frame budget are rendered in a later
+     * frame, and the repaint must find them even if they are not cached.
+     */
+    @Test
+    public void paintsDeferredShadowLargerThanCache() throws InterruptedException {
+        MaterialShadow.setAsyncRenderingEnabled(false);
+        MaterialShadow.setFrameBudget(0);
+        cache.setMaximumSize(100000);
+        MaterialShadow shadow = new MaterialShadow(owner);
+        assertEquals(0, paint(shadow, 5));
+        assertTrue("the owner was not repainted", owner.awaitRepaint());
+        assertTrue("the shadow was not painted", paint(shadow, 5) > 0);
+        assertEquals(0, cache.getCount());
+        assertEquals(0, MaterialShadow.getDeferredShadowCount());
+
+        Thread.sleep(500);
+        assertEquals(1, owner.getRepaintCount());
+    }
+
+    /**
+     * Prewarming renders both levels that a crossfade blends, at the quality
+     * of the spec, so that a shadow with that quality paints right away.
+     */
+    @Test
+    public void paintsPrewarmedShadowWithQuality() throws Exception {
+        double step = MaterialShadow.getLevelQuantization();
+        MaterialShadow.setLevelQuantization(0.25);
+        try {
+            MaterialShadow.prewarm(Collections.singleton(new ShadowSpec(400, 300, 3, 2.1,
+                    MaterialShadow.Type.SQUARE, 1, MaterialShadow.Quality.PRECISE))).get(10, TimeUnit.SECONDS);
+            MaterialShadow shadow = new MaterialShadow(owner);
+            shadow.setQuality(MaterialShadow.Quality.PRECISE);
+            assertTrue("the shadow was not painted", paint(shadow, 2.1) > 0);
+            assertEquals(0, ShadowRenderService.getPendingCount());
+            assertEquals(0, owner.getRepaintCount());
+        } finally {
+            MaterialShadow.setLevelQuantization(step);
+        }
+    }
+
+    /**
+     * A shadow that can't be rendered is reported once and not rendered
+     * again when it is requested the next time.
+     */
+    @Test
+    public void reportsFailedRenderOnce() throws InterruptedException {
+        ShadowCache.Key key = new ShadowCache.Key(100000, 100000, 3, 1, MaterialShadow.Type.SQUARE,
+                MaterialShadow.Renderer.BLUR, 1, false, MaterialShadow.Quality.STANDARD);
+        final List<Throwable> reported = new CopyOnWriteArrayList<>();
+        Thread.UncaughtExceptionHandler handler = Thread.getDefaultUncaughtExceptionHandler();
+        Thread.setDefaultUncaughtExceptionHandler(new Thread.UncaughtExceptionHandler() {
+            @Override
+            public void uncaughtException(Thread thread, Throwable failure) {
+                reported.add(failure);
+            }
+        });
+        try {
+            Future<BufferedImage> first = ShadowRenderService.submit(key, new MaterialShadow(owner));
+            try {
+                first.get(10, TimeUnit.SECONDS);
+                fail("rendering did not fail");
+            } catch (ExecutionException | TimeoutException e) {
+                assertTrue(e instanceof ExecutionException);
+            }
+            long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+            while (ShadowRenderService.getPendingCount() > 0 && System.nanoTime() < deadline) {
+                Thread.sleep(10);
+            }
+            assertEquals(1, reported.size());
+
+            assertSame(first, ShadowRenderService.submit(key, new MaterialShadow(owner)));
+            assertEquals(0, ShadowRenderService.getPendingCount());
+            assertEquals(1, reported.size());
+            assertEquals(0, owner.getRepaintCount());
+        } finally {
+            Thread.setDefaultUncaughtExceptionHandler(handler);
+        }
+    }
+
+    /**
+     * Paints a shadow onto an empty canvas.
+     * @return the number of pixels that are not transparent
+     */
+    private static int paint(MaterialShadow shadow, double level) {
+        BufferedImage canvas = new BufferedImage(400, 300, BufferedImage.TYPE_INT_ARGB);
+        Graphics2D g = canvas.createGraphics();
+        shadow.paint(g, 400, 300, 3, level, MaterialShadow.Type.SQUARE);
+        g.dispose();
+        int painted = 0;
+        for (int y = 0; y < canvas.getHeight(); y++) {
+            for (int x = 0; x < canvas.getWidth(); x++) {
+                if (canvas.getRGB(x, y) >>> 24 != 0) {
+                    painted++;
+                }
+            }
+        }
+        return painted;
+    }
+
+    /**
+     * A component that counts how often it is repainted, without painting.
+     */
+    private static class RepaintCounter extends JComponent {
+        private final Semaphore repaints = new Semaphore(0);
+        private volatile int repaintCount;
+
+        @Override
+        public void repaint(long tm, int x, int y, int width, int height) {
+            repaintCount++;
+            repaints.release();
+        }
+
+        boolean awaitRepaint() throws InterruptedException {
+            return repaints.tryAcquire(10, TimeUnit.SECONDS);
+        }
+
+        int getRepaintCount() {
+            return repaintCount;
+        }
+    }
+}
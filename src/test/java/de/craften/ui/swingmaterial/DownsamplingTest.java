@@ -0,0 +1,124 @@
+package de.craften.ui.swingmaterial;
+
+import de.craften.ui.swingmaterial.util.FastGaussianBlur;
+import org.junit.After;
+import org.junit.Test;
+
+import java.awt.*;
+import java.awt.geom.RoundRectangle2D;
+import java.awt.image.BufferedImage;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Compares shadows blurred at a reduced resolution with the same shadows
+ * blurred at full resolution.
+ */
+public class DownsamplingTest {
+    /**
+     * The largest difference of the alpha [0~255] of any pixel that is
+     * accepted for a blur at half or quarter resolution.
+     */
+    private static final int TOLERANCE = 4;
+
+    /**
+     * The downsampling threshold of the shadows in these tests. With lower
+     * thresholds, the error of shadows that end a pixel away from the edge of
+     * their image exceeds the tolerance.
+     */
+    private static final float THRESHOLD = 10;
+
+    @After
+    public void tearDown() {
+        MaterialShadow.setDownsamplingThreshold(Float.POSITIVE_INFINITY);
+    }
+
+    @Test
+    public void blurAtReducedResolution() {
+        for (double radius : new double[]{10, 12, 16, 20, 28, 38}) {
+            assertBlurredLike(radius, createShape(13, 17));
+        }
+    }
+
+    @Test
+    public void blurAlongEdges() {
+        for (double radius : new double[]{10, 12, 16, 20, 28, 38}) {
+            assertBlurredLike(radius, createShape(0, 1));
+        }
+    }
+
+    @Test
+    public void squareShadows() {
+        for (double level = 0.5; level <= 5; level += 0.5) {
+            BufferedImage full = MaterialShadow.renderShadow(400, 300, level, 3, MaterialShadow.Renderer.BLUR);
+            MaterialShadow.setDownsamplingThreshold(THRESHOLD);
+            BufferedImage reduced = MaterialShadow.renderShadow(400, 300, level, 3, MaterialShadow.Renderer.BLUR);
+            MaterialShadow.setDownsamplingThreshold(Float.POSITIVE_INFINITY);
+            int difference = getMaximumDifference(full, reduced);
+            assertTrue("level " + level + " differs by " + difference, difference <= TOLERANCE);
+        }
+    }
+
+    @Test
+    public void circularShadows() {
+        for (double level = 0.5; level <= 5; level += 0.5) {
+            BufferedImage full = MaterialShadow.renderCircularShadow(96, level, MaterialShadow.Renderer.BLUR);
+            MaterialShadow.setDownsamplingThreshold(THRESHOLD);
+            BufferedImage reduced = MaterialShadow.renderCircularShadow(96, level, MaterialShadow.Renderer.BLUR);
+            MaterialShadow.setDownsamplingThreshold(Float.POSITIVE_INFINITY);
+            int difference = getMaximumDifference(full, reduced);
+            assertTrue("level " + level + " differs by " + difference, difference <= TOLERANCE);
+        }
+    }
+
+    /**
+     * Blurs an image at full resolution and at the reduced resolution that
+     * {@link MaterialShadow} uses for the given radius, and compares them.
+     */
+    private static void assertBlurredLike(double radius, BufferedImage image) {
+        int downsampling = radius >= 2 * THRESHOLD ? 4 : 2;
+        BufferedImage full = copy(image);
+        FastGaussianBlur.blurAlpha(full, radius, 0, 1);
+        BufferedImage reduced = copy(image);
+        FastGaussianBlur.blurAlpha(reduced, radius, 0, downsampling);
+        int difference = getMaximumDifference(full, reduced);
+        assertTrue("radius " + radius + " at 1/" + downsampling + " differs by " + difference,
+                difference <= TOLERANCE);
+    }
+
+    /**
+     * Creates an image of a translucent rounded rectangle, with the given gap
+     * to the edges of the image at the top and bottom. Blurs continue the
+     * edges of an image, so a gap of a single pixel is the hardest case for
+     * a blur at a reduced resolution.
+     */
+    private static BufferedImage createShape(int top, int bottom) {
+        BufferedImage image = new BufferedImage(640, 480, BufferedImage.TYPE_INT_ARGB);
+        Graphics2D g = image.createGraphics();
+        g.setColor(new Color(0, 0, 0, 77));
+        g.fill(new RoundRectangle2D.Float(20, top, 600, 480 - top - bottom, 6, 6));
+        g.dispose();
+        return image;
+    }
+
+    private static BufferedImage copy(BufferedImage image) {
+        BufferedImage copy = new BufferedImage(image.getWidth(), image.getHeight(), image.getType());
+        Graphics2D g = copy.createGraphics();
+        g.drawImage(image, 0, 0, null);
+        g.dispose();
+        return copy;
+    }
+
+    private static int getMaximumDifference(BufferedImage expected, BufferedImage actual) {
+        assertEquals(expected.getWidth(), actual.getWidth());
+        assertEquals(expected.getHeight(), actual.getHeight());
+        int maximum = 0;
+        for (int y = 0; y < expected.getHeight(); y++) {
+            for (int x = 0; x < expected.getWidth(); x++) {
+                maximum = Math.max(maximum, Math.abs((expected.getRGB(x, y) >>> 24) - (actual.getRGB(x, y) >>> 24)));
+            }
+        }
+        return maximum;
+    }
+}
@@ -0,0 +1,96 @@
+package de.craften.ui.swingmaterial;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Compares the blur of each quality with a Gaussian blur computed in double
+ * precision.
+ */
+public class QualityTest {
+    private static final int ALPHA = 77;
+    private static final float[] RADII = {3, 12, 38};
+
+    @Test
+    public void fast() {
+        assertError(MaterialShadow.Quality.FAST, 3, 0.7);
+    }
+
+    @Test
+    public void standard() {
+        assertError(MaterialShadow.Quality.STANDARD, 2.5, 0.65);
+    }
+
+    @Test
+    public void precise() {
+        assertError(MaterialShadow.Quality.PRECISE, 1, 0.35);
+    }
+
+    /**
+     * Blurs a rectangle of a shadow's alpha with the given quality and checks
+     * the largest and the mean difference to a Gaussian, in alpha levels
+     * [0~255]. The mean is taken over the pixels that the Gaussian changes by
+     * at least half a level, so it doesn't depend on the size of the
+     * rectangle.
+     */
+    private static void assertError(MaterialShadow.Quality quality, double maximum, double mean) {
+        for (float radius : RADII) {
+            int pad = (int) Math.ceil(4 * radius);
+            int inner = 200;
+            int size = inner + 2 * pad;
+            int[] alpha = new int[size * size];
+            for (int y = pad; y < pad + inner; y++) {
+                for (int x = pad; x < pad + inner; x++) {
+                    alpha[y * size + x] = ALPHA;
+                }
+            }
+            int[] original = alpha.clone();
+            MaterialShadow.blur(alpha, size, size, radius, quality);
+
+            double[] profile = blurLine(size, pad, pad + inner, radius);
+            double largest = 0;
+            double sum = 0;
+            int count = 0;
+            for (int y = 0; y < size; y++) {
+                for (int x = 0; x < size; x++) {
+                    double expected = ALPHA * profile[x] * profile[y];
+                    if (Math.abs(expected - original[y * size + x]) < 0.5) {
+                        continue;
+                    }
+                    double difference = Math.abs(alpha[y * size + x] - expected);
+                    largest = Math.max(largest, difference);
+                    sum += difference;
+                    count++;
+                }
+            }
+            String message = quality + " at radius " + radius + " differs by " + largest + " at most and "
+                    + sum / count + " on average";
+            assertTrue(message, largest <= maximum);
+            assertTrue(message, sum / count <= mean);
+        }
+    }
+
+    /**
+     * Blurs a line that is one from {@code from} (inclusive) to {@code to}
+     * (exclusive) and zero elsewhere with a sampled Gaussian kernel.
+     */
+    private static double[] blurLine(int length, int from, int to, double sigma) {
+        int extent = (int) Math.ceil(8 * sigma);
+        double[] kernel = new double[extent + 1];
+        double total = 0;
+        for (int i = 0; i <= extent; i++) {
+            kernel[i] = Math.exp(-i * i / (2 * sigma * sigma));
+            total += i == 0 ? kernel[i] : 2 * kernel[i];
+        }
+        double[] line = new double[length];
+        for (int x = 0; x < length; x++) {
+            double value = 0;
+            for (int i = Math.max(from, x - extent); i < Math.min(to, x + extent + 1); i++) {
+                value += kernel[Math.abs(x - i)];
+            }
+            line[x] = value / total;
+        }
+        return line;
+    }
+}
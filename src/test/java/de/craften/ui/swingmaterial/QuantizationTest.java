@@ -0,0 +1,91 @@
+package de.craften.ui.swingmaterial;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.awt.*;
+import java.awt.geom.Ellipse2D;
+import java.awt.image.BufferedImage;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Compares shadows painted at quantized levels with shadows painted at any
+ * level.
+ */
+public class QuantizationTest {
+    private static final double STEP = 0.25;
+
+    @After
+    public void tearDown() {
+        MaterialShadow.setLevelQuantization(STEP);
+        MaterialShadow.setTightBoundsEnabled(false);
+    }
+
+    @Test
+    public void blendLevelsLinearly() {
+        for (boolean tight : new boolean[]{false, true}) {
+            MaterialShadow.setTightBoundsEnabled(tight);
+            for (int shape = 0; shape < 3; shape++) {
+                for (double level = 0.1; level < 5; level += 0.3) {
+                    double lower = Math.floor(level / STEP) * STEP;
+                    double fraction = (level - lower) / STEP;
+                    MaterialShadow shadow = new MaterialShadow();
+                    MaterialShadow.setLevelQuantization(0);
+                    BufferedImage lowerShadow = paint(shadow, lower, shape);
+                    BufferedImage upperShadow = paint(shadow, lower + STEP, shape);
+                    MaterialShadow.setLevelQuantization(STEP);
+                    BufferedImage blend = paint(shadow, level, shape);
+                    for (int y = 0; y < blend.getHeight(); y++) {
+                        for (int x = 0; x < blend.getWidth(); x++) {
+                            double expected = (1 - fraction) * (lowerShadow.getRGB(x, y) >>> 24)
+                                    + fraction * (upperShadow.getRGB(x, y) >>> 24);
+                            double difference = Math.abs((blend.getRGB(x, y) >>> 24) - expected);
+                            assertTrue("shape " + shape + " at level " + level + " differs by " + difference,
+                                    difference <= 1);
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    @Test
+    public void paintQuantizedLevelsExactly() {
+        for (int shape = 0; shape < 3; shape++) {
+            for (int level = 1; level <= 5; level++) {
+                MaterialShadow shadow = new MaterialShadow();
+                MaterialShadow.setLevelQuantization(0);
+                BufferedImage expected = paint(shadow, level, shape);
+                MaterialShadow.setLevelQuantization(STEP);
+                BufferedImage actual = paint(shadow, level, shape);
+                for (int y = 0; y < expected.getHeight(); y++) {
+                    for (int x = 0; x < expected.getWidth(); x++) {
+                        assertEquals(expected.getRGB(x, y), actual.getRGB(x, y));
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Paints a square, circular or outlined shadow onto an empty canvas, at
+     * an offset and with a clip, like a component would.
+     */
+    private static BufferedImage paint(MaterialShadow shadow, double level, int shape) {
+        BufferedImage canvas = new BufferedImage(420, 340, BufferedImage.TYPE_INT_ARGB);
+        Graphics2D g = canvas.createGraphics();
+        g.translate(7, 5);
+        g.clipRect(-7, 20, 420, 300);
+        if (shape == 0) {
+            shadow.paint(g, 400, 300, 3, level, MaterialShadow.Type.SQUARE);
+        } else if (shape == 1) {
+            shadow.paint(g, 96, 96, 0, level, MaterialShadow.Type.CIRCULAR);
+        } else {
+            shadow.paint(g, new Ellipse2D.Double(20, 30, 200, 120), level);
+        }
+        g.dispose();
+        return canvas;
+    }
+}
@@ -0,0 +1,107 @@
+package de.craften.ui.swingmaterial;
+
+import org.junit.After;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Writes shadows to an atlas and reads them back.
+ */
+public class ShadowAtlasTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @After
+    public void tearDown() {
+        MaterialShadow.setAtlas(null);
+        ShadowCache.getShared().clear();
+    }
+
+    @Test
+    public void readsShadowsAsRendered() throws IOException {
+        File file = folder.newFile("shadows.atlas");
+        List<ShadowCache.Key> keys = record();
+        ShadowAtlas.write(file, keys);
+
+        ShadowAtlas atlas = ShadowAtlas.load(file);
+        assertEquals(new HashSet<>(keys), atlas.getKeys());
+        for (ShadowCache.Key key : keys) {
+            BufferedImage expected = MaterialShadow.render(key);
+            BufferedImage actual = atlas.get(key);
+            assertNotNull("missing " + key, actual);
+            assertEquals(expected.getWidth(), actual.getWidth());
+            assertEquals(expected.getHeight(), actual.getHeight());
+            assertArrayEquals("pixels of " + key, getPixels(expected), getPixels(actual));
+        }
+    }
+
+    @Test
+    public void rejectsTruncatedAtlas() throws IOException {
+        File file = folder.newFile("shadows.atlas");
+        ShadowAtlas.write(file, record());
+        long length = file.length();
+        for (long truncated : new long[]{length - 1, length / 2, 20, 10}) {
+            try (RandomAccessFile output = new RandomAccessFile(file, "rw")) {
+                output.setLength(truncated);
+            }
+            try {
+                ShadowAtlas.load(file);
+                fail("loaded an atlas truncated to " + truncated + " bytes");
+            } catch (IOException e) {
+                // expected
+            }
+        }
+    }
+
+    /**
+     * Renders shadows of both renderers and types, with and without tight
+     * bounds, at twice the resolution and in precise quality, and records
+     * them.
+     * @return the recorded keys
+     */
+    private static List<ShadowCache.Key> record() {
+        List<ShadowCache.Key> rendered = new ArrayList<>();
+        for (MaterialShadow.Renderer renderer : MaterialShadow.Renderer.values()) {
+            for (boolean tight : new boolean[]{false, true}) {
+                for (double level : new double[]{1, 3.5}) {
+                    rendered.add(new ShadowCache.Key(120, 80, 3, level, MaterialShadow.Type.SQUARE, renderer, 2,
+                            tight, MaterialShadow.Quality.PRECISE));
+                    rendered.add(new ShadowCache.Key(400, 300, 3, level, MaterialShadow.Type.SQUARE, renderer, 2,
+                            tight, MaterialShadow.Quality.PRECISE));
+                    rendered.add(new ShadowCache.Key(56, 0, 0, level, MaterialShadow.Type.CIRCULAR, renderer, 2,
+                            tight, MaterialShadow.Quality.PRECISE));
+                }
+            }
+        }
+        ShadowAtlas.Recorder recorder = ShadowAtlas.startRecording();
+        try {
+            for (ShadowCache.Key key : rendered) {
+                MaterialShadow.render(key);
+            }
+        } finally {
+            recorder.stop();
+        }
+        List<ShadowCache.Key> keys = recorder.getKeys();
+        assertTrue(keys.containsAll(rendered));
+        return keys;
+    }
+
+    private static int[] getPixels(BufferedImage image) {
+        return image.getRGB(0, 0, image.getWidth(), image.getHeight(), null, 0, image.getWidth());
+    }
+}